@@ -0,0 +1,167 @@
+/**
+ * Remote Deployment Servlet
+ * Copyright (C) 2021 Seanox Software Solutions
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of version 2 of the GNU General Public License as published by the
+ * Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package com.seanox;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Minimal servlet environment for the benchmarks. Requests, responses and the
+ * configuration are proxies of the Jakarta interfaces, which support only what
+ * RemoteDeploymentImpl uses, so that the benchmarks measure the implementation
+ * and not a servlet container.
+ */
+class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    private static Object createDefault(final Class<?> type) {
+        if (!type.isPrimitive()
+                || type == void.class)
+            return null;
+        if (type == boolean.class)
+            return false;
+        if (type == char.class)
+            return '\0';
+        if (type == long.class)
+            return 0L;
+        if (type == float.class)
+            return 0F;
+        if (type == double.class)
+            return 0D;
+        if (type == short.class)
+            return (short)0;
+        return type == int.class ? 0 : (Object)(byte)0;
+    }
+
+    private static <T> T createProxy(final Class<T> type, final Map<String, Object> results) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, arguments) -> {
+            if (results.containsKey(method.getName()))
+                return results.get(method.getName());
+            return BenchmarkSupport.createDefault(method.getReturnType());
+        }));
+    }
+
+    static ServletConfig createConfig(final Map<String, String> parameters) {
+        final ServletContext context = BenchmarkSupport.createProxy(ServletContext.class, Map.of());
+        return (ServletConfig)Proxy.newProxyInstance(ServletConfig.class.getClassLoader(), new Class<?>[] {ServletConfig.class}, (proxy, method, arguments) -> {
+            if (("getInitParameter").equals(method.getName()))
+                return parameters.get((String)arguments[0]);
+            if (("getServletContext").equals(method.getName()))
+                return context;
+            return BenchmarkSupport.createDefault(method.getReturnType());
+        });
+    }
+
+    static HttpServletRequest createRequest(final String method, final Map<String, String> headers,
+            final byte[] bytes, final int offset, final int length) {
+        return (HttpServletRequest)Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class}, (proxy, invocation, arguments) -> {
+            if (("getMethod").equals(invocation.getName()))
+                return method;
+            if (("getHeader").equals(invocation.getName()))
+                return headers.get((String)arguments[0]);
+            if (("getInputStream").equals(invocation.getName()))
+                return new RequestInputStream(bytes, offset, length);
+            return BenchmarkSupport.createDefault(invocation.getReturnType());
+        });
+    }
+
+    static HttpServletResponse createResponse() {
+        final int[] status = new int[1];
+        return (HttpServletResponse)Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class}, (proxy, method, arguments) -> {
+            if (("setStatus").equals(method.getName()))
+                status[0] = (Integer)arguments[0];
+            if (("getStatus").equals(method.getName()))
+                return status[0];
+            return BenchmarkSupport.createDefault(method.getReturnType());
+        });
+    }
+
+    /**
+     * Private methods are measured via method handles, so that the
+     * implementation does not have to be changed for the benchmarks.
+     */
+    static MethodHandle findMethod(final Class<?> type, final String name, final Class<?>... parameters)
+            throws ReflectiveOperationException {
+        final Method method = type.getDeclaredMethod(name, parameters);
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method);
+    }
+
+    static Object findField(final Object object, final String name)
+            throws ReflectiveOperationException {
+        final java.lang.reflect.Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+
+    private static class RequestInputStream extends ServletInputStream {
+
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        private RequestInputStream(final byte[] bytes, final int offset, final int length) {
+            this.bytes = Objects.nonNull(bytes) ? bytes : new byte[0];
+            this.position = offset;
+            this.limit = offset +length;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return this.position >= this.limit;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(final ReadListener listener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read() {
+            return this.position < this.limit ? this.bytes[this.position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (this.position >= this.limit)
+                return -1;
+            final int size = Math.min(length, this.limit -this.position);
+            System.arraycopy(this.bytes, this.position, bytes, offset, size);
+            this.position += size;
+            return size;
+        }
+    }
+}
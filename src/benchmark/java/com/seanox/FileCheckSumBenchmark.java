@@ -0,0 +1,83 @@
+/**
+ * Remote Deployment Servlet
+ * Copyright (C) 2021 Seanox Software Solutions
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of version 2 of the GNU General Public License as published by the
+ * Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package com.seanox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checksums of the file on the side of the sender by calcFileCheckSum of
+ * RemoteDeploymentPush, with fixed or content-defined chunk boundaries and
+ * optionally with the SHA-256 of the chunks for the cache of the receiver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileCheckSumBenchmark {
+
+    @Param({"33554432"})
+    private int fileSize;
+
+    @Param({"65536", "1048576", "4194304"})
+    private int packageSize;
+
+    @Param({"false", "true"})
+    private boolean chunking;
+
+    @Param({"false", "true"})
+    private boolean hashing;
+
+    private File file;
+    private MethodHandle calcFileCheckSum;
+
+    @Setup(Level.Trial)
+    public void setup()
+            throws Exception {
+        final byte[] data = new byte[this.fileSize];
+        new Random(0).nextBytes(data);
+        this.file = Files.createTempFile("benchmark-", ".bin").toFile();
+        Files.write(this.file.toPath(), data);
+        this.calcFileCheckSum = BenchmarkSupport.findMethod(Class.forName(RemoteDeploymentPush.class.getName() + "$Deployment"),
+                "calcFileCheckSum", File.class, int.class, boolean.class, boolean.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    @Benchmark
+    public Object calcFileCheckSum()
+            throws Throwable {
+        return this.calcFileCheckSum.invoke(this.file, this.packageSize, this.chunking, this.hashing);
+    }
+}
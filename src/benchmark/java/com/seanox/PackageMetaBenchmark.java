@@ -0,0 +1,73 @@
+/**
+ * Remote Deployment Servlet
+ * Copyright (C) 2021 Seanox Software Solutions
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of version 2 of the GNU General Public License as published by the
+ * Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package com.seanox;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the headers of a chunk by RemoteDeploymentImpl.detectPackageMeta,
+ * from the Package header only up to all optional headers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackageMetaBenchmark {
+
+    @Param({"package", "range", "complete"})
+    private String headers;
+
+    private HttpServletRequest request;
+    private MethodHandle detectPackageMeta;
+
+    @Setup(Level.Trial)
+    public void setup()
+            throws Exception {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Package", "EF190547-AD51-4383-982A-E8C4BF657FA0/8H7G6F5E4D3C2B1A/17-19/321/F07BD273B8EDB26BD7E568B3CBCBF97F");
+        if (!("package").equals(this.headers))
+            headers.put("Package-Range", "1048576-1245183/21000000");
+        if (("complete").equals(this.headers)) {
+            headers.put("Package-Checksum", "0CC175B9C0F1B6A831C399E269772661");
+            headers.put("Package-Delta", "92EB5FFEE6AE2FEC3AD71C777531578F");
+            headers.put("Content-Encoding", "deflate");
+        }
+        this.request = BenchmarkSupport.createRequest("PUT", headers, null, 0, 0);
+        this.detectPackageMeta = BenchmarkSupport.findMethod(RemoteDeploymentImpl.class,
+                "detectPackageMeta", HttpServletRequest.class);
+    }
+
+    @Benchmark
+    public Object detectPackageMeta()
+            throws Throwable {
+        return this.detectPackageMeta.invoke(this.request);
+    }
+}
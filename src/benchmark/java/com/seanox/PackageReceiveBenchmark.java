@@ -0,0 +1,123 @@
+/**
+ * Remote Deployment Servlet
+ * Copyright (C) 2021 Seanox Software Solutions
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of version 2 of the GNU General Public License as published by the
+ * Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package com.seanox;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload of a complete file via RemoteDeploymentImpl.service() with blocking
+ * I/O, from the intake of the chunks up to the activation of the destination
+ * file. With a range, the chunks are written directly into the final file,
+ * without a range, the chunks are merged at the end. The completion runs in
+ * the background and is awaited, so that it is part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PackageReceiveBenchmark {
+
+    private static final String SECRET = "B3NCHM4RK";
+
+    @Param({"4194304", "33554432"})
+    private int fileSize;
+
+    @Param({"65536", "1048576", "4194304"})
+    private int packageSize;
+
+    @Param({"true", "false"})
+    private boolean range;
+
+    private byte[] data;
+    private String checkSum;
+    private File destination;
+    private RemoteDeploymentImpl remoteDeployment;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup()
+            throws Exception {
+        this.data = new byte[this.fileSize];
+        new Random(0).nextBytes(this.data);
+        final StringBuilder checkSum = new StringBuilder();
+        for (final byte digit : MessageDigest.getInstance("MD5").digest(this.data))
+            checkSum.append(String.format("%02X", digit));
+        this.checkSum = checkSum.toString();
+
+        this.destination = Files.createTempFile("benchmark-", ".bin").toFile();
+        final Map<String, String> parameters = new HashMap<>();
+        parameters.put("secret", SECRET);
+        parameters.put("destination", this.destination.getAbsolutePath());
+        parameters.put("expiration", "300000");
+        this.remoteDeployment = new RemoteDeploymentImpl();
+        this.remoteDeployment.init(BenchmarkSupport.createConfig(parameters));
+        this.executor = (ExecutorService)BenchmarkSupport.findField(this.remoteDeployment, "executor");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.remoteDeployment.destroy();
+        this.destination.delete();
+    }
+
+    @Benchmark
+    public void upload()
+            throws Exception {
+        final String uuid = UUID.randomUUID().toString().toUpperCase();
+        final int count = (this.fileSize +this.packageSize -1) /this.packageSize;
+        for (int number = 1; number <= count; number++) {
+            final int offset = (number -1) *this.packageSize;
+            final int length = Math.min(this.packageSize, this.fileSize -offset);
+            final Map<String, String> headers = new HashMap<>();
+            headers.put("Package", String.format("%s/%s/%d/%d/%s", uuid, SECRET, number, count, this.checkSum));
+            if (this.range)
+                headers.put("Package-Range", String.format("%d-%d/%d", offset, offset +length -1, this.fileSize));
+            final HttpServletRequest request = BenchmarkSupport.createRequest("PUT", headers, this.data, offset, length);
+            final HttpServletResponse response = BenchmarkSupport.createResponse();
+            this.remoteDeployment.service(request, response);
+            if (response.getStatus() != HttpServletResponse.SC_CREATED)
+                throw new IllegalStateException("Unexpected status " + response.getStatus());
+        }
+
+        // The completion is done by the executor with one thread, so an
+        // additional task ends only after the upload has been completed.
+        this.executor.submit(() -> {}).get();
+        if (this.destination.length() != this.fileSize)
+            throw new IllegalStateException("Incomplete destination file");
+    }
+}
@@ -18,20 +18,86 @@
 package com.seanox;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -57,82 +123,467 @@ import jakarta.servlet.http.HttpServletResponse;
  * data is transferred in chunks, the files must be retained. The expiration
  * time in milliseconds determines how long the expiration time is in case of
  * an error. After the expiration time, the temporary files are cleaned up. A
- * value 0 and smaller disables the clean up.
+ * value 0 and smaller disables the clean up. The clean up runs in the
+ * background, the requests do not check the temporary files.
+ *
+ * <h3>Parameter: staging</h3>
+ * Directory for the temporary files of the uploads, default the directory of
+ * the destination file. The completed file is activated with an atomic move
+ * (rename), which is only possible on the same file system as the destination
+ * file. So the activation takes no time and the destination file is never
+ * incomplete. On another file system, the file is copied instead, which is
+ * logged at the start. The files are kept in a hidden directory there, e.g.
+ * .output.png-1A2B3C4D.staging, whose name is derived from the destination
+ * file. Each instance uses its own subdirectory of it, which is locked while
+ * the instance runs and is removed when the instance ends. Subdirectories of
+ * ended instances, e.g. after a crash, are deleted at the start.
+ *
+ * <h3>Parameter: workers</h3>
+ * The completion of an upload (merge, checksum, activation and command) is
+ * done in the background by a separate executor, so that the threads of the
+ * servlet container are released immediately. The number of threads of the
+ * executor is determined by this parameter, default 1.
+ *
+ * <h3>Parameter: virtual</h3>
+ * With the value true, the executor uses virtual threads, if they are
+ * available (Java 21 and higher). Otherwise, platform threads are used.
+ *
+ * <h3>Parameter: async</h3>
+ * With the value true, the chunks are received with non-blocking I/O (read
+ * listener and asynchronous file channel), so that slow uploads do not occupy
+ * threads of the servlet container. This requires the registration with async
+ * support (async-supported), otherwise blocking I/O is used.
+ *
+ * <h3>Parameter: cache</h3>
+ * Maximum size in bytes of the cache for received chunks, default 0 (no
+ * cache). The chunks are stored by their SHA-256 and the chunks used least
+ * recently are removed first. With a POST request, the sender announces the
+ * SHA-256 of the chunks of an upload. Chunks contained in the cache are taken
+ * from there and need not be sent again, e.g. for a rollback or a repeated
+ * deployment. The response is the same as for a HEAD request.
+ *
+ * <h3>Parameter: relay</h3>
+ * Optional comma-separated list of URLs of other nodes (peers), to which each
+ * received chunk is forwarded, e.g. in a cluster. So the sender uploads only
+ * to one entry node and the chunks are distributed in the LAN. The peers use
+ * the same secret and can forward the chunks themselves, so chains and trees
+ * are possible, but no loops. Each peer checks the final checksum and executes
+ * its own command. The upload is completed only after the chunks have been
+ * forwarded or the forwarding has failed, errors of the peers are logged. The
+ * forwarding of a chunk is limited by the expiration, without expiration by
+ * five minutes. With a delta, the peers rebuild the file from their own
+ * destination file, which therefore must be the same.
+ *
+ * <h3>Parameter: limit</h3>
+ * Maximum number of bytes per second that are received for all uploads
+ * together, default 0 (no limit). The limit is implemented as a token bucket,
+ * so that short bursts are possible, and slows down the reading of the chunks,
+ * so that the deployment uses only a predictable share of the bandwidth. The
+ * sender is slowed down by the flow control of TCP. Chunks taken from the
+ * cache and forwarding to peers are not limited.
+ *
+ * <h3>Assembly</h3>
+ * If the optional Package-Range header is sent with the chunks, each chunk is
+ * written directly to its position in a preallocated file, which is complete
+ * when the last chunk arrives. The chunks can be of different sizes, e.g. with
+ * content-defined boundaries, only their ranges have to cover the file.
+ * Without the header, the chunks are stored as separate files and merged at
+ * the end. In both cases, the checksum is calculated while the data is written
+ * and not in an additional pass over the final file.
+ *
+ * <h3>Range of chunks</h3>
+ * With the Package-Range header, a request can also contain several
+ * consecutive chunks, whose numbers are then specified as a range in the
+ * Package header, e.g. 3-5. The chunks are received and released together.
+ * This allows the sender to adapt the size of the requests.
+ *
+ * <h3>Package-Checksum</h3>
+ * If the optional Package-Checksum header is sent with the chunks, the MD5 of
+ * each chunk is checked when the chunk is received. A corrupted chunk is
+ * rejected immediately with status 422 and can be sent again.
+ *
+ * <h3>Content-Encoding</h3>
+ * Chunks can be sent compressed with the header Content-Encoding: deflate.
+ * They are decompressed while they are written, the checksums always refer to
+ * the uncompressed data. Other encodings are answered with status 415.
+ *
+ * <h3>Delta</h3>
+ * A GET request with the Package header of an upload is answered with the
+ * block signatures (rolling checksum and MD5) of the current destination file.
+ * This allows the sender to transfer only a delta with the changed data. The
+ * chunks of the delta are sent with the header Package-Delta, which contains
+ * the checksum of the delta. When all chunks have been received, the file is
+ * rebuilt from the destination file and the delta and then checked with the
+ * checksum from the Package header.
+ *
+ * <h3>Resume</h3>
+ * A HEAD request with the Package header of an upload is answered with the
+ * header Package-Received, which contains the numbers of the chunks already
+ * received, e.g. 1-17,19,21-30. So an interrupted upload can be resumed.
+ * Chunks sent again are answered with status 423 if they all have already
+ * been received. If one of them is still being received by another request,
+ * the answer is status 409 with Retry-After, and the chunks can be sent again
+ * later.
+ *
+ * <h3>Metrics</h3>
+ * Each instance registers an MBean (RemoteDeploymentMXBean) with the platform
+ * MBean server, with counters of the received chunks and bytes, the rejected
+ * and failed chunks and the uploads, and with histograms of the times for
+ * receiving, completion and command. The counters are lock-free, so that the
+ * receiving of chunks is not slowed down. If the registration fails, the
+ * deployment works without metrics.
+ *
+ * <h3>Flight Recorder</h3>
+ * The phases of an upload are recorded as events of the Java Flight Recorder
+ * (category Seanox / Remote Deployment) with sizes and durations: receiving of
+ * a chunk, merge, checksum, rebuild of a delta, move of files and command. The
+ * events cost almost nothing if they are not recorded.
  *
  * <h3>Security Concept</h3>
- * Only PUT requests and matching Secret headers are accepted, otherwise the
- * filter behaves as if it does not exist. The filter reacts only after
+ * Only PUT requests (HEAD, GET and POST for the status, the signatures and
+ * the cache of an upload) and matching Secret headers are accepted, otherwise
+ * the filter behaves as if it does not exist. The filter reacts only after
  * sufficient authorization.
  */
 class RemoteDeploymentImpl {
 
-    private static final String UUID = java.util.UUID.randomUUID().toString().toUpperCase();
+    private final String instance = java.util.UUID.randomUUID().toString().toUpperCase();
 
     private static final String PARAMETER_SECRET = "secret";
     private static final String PARAMETER_DESTINATION = "destination";
     private static final String PARAMETER_COMMAND = "command";
     private static final String PARAMETER_EXPIRATION = "expiration";
+    private static final String PARAMETER_STAGING = "staging";
+    private static final String PARAMETER_WORKERS = "workers";
+    private static final String PARAMETER_VIRTUAL = "virtual";
+    private static final String PARAMETER_ASYNC = "async";
+    private static final String PARAMETER_CACHE = "cache";
+    private static final String PARAMETER_RELAY = "relay";
+    private static final String PARAMETER_LIMIT = "limit";
 
+    private ServletContext context;
     private String secret;
     private File destination;
+    private File staging;
+    private FileLock stagingLock;
+    private ScheduledExecutorService janitor;
     private String command;
     private long expiration;
+    private boolean async;
+    private PackageCache cache;
+    private URI[] relay;
+    private HttpClient relayClient;
+    private PackageThrottle throttle;
+    private ExecutorService executor;
 
     private static final String HTTP_HEADER_PACKAGE = "Package";
+    private static final String HTTP_HEADER_PACKAGE_RANGE = "Package-Range";
+    private static final String HTTP_HEADER_PACKAGE_CHECKSUM = "Package-Checksum";
+    private static final String HTTP_HEADER_PACKAGE_RECEIVED = "Package-Received";
+    private static final String HTTP_HEADER_PACKAGE_DELTA = "Package-Delta";
+    private static final String HTTP_HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HTTP_HEADER_RETRY_AFTER = "Retry-After";
+
+    /** Instruction of a delta: copy of a region of the destination file */
+    private static final int DELTA_COPY = 'C';
+
+    /** Instruction of a delta: data contained in the delta */
+    private static final int DELTA_LITERAL = 'L';
+
+    /** Number of retries for forwarding a chunk to a peer */
+    private static final int RELAY_RETRIES = 2;
+
+    /** Timeout in milliseconds for the connection to a peer */
+    private static final long RELAY_CONNECT_TIMEOUT = 10000;
+
+    /** Timeout in milliseconds for forwarding a chunk without expiration */
+    private static final long RELAY_TIMEOUT = 300000;
+
+    private final Map<String, PackageState> packageStates = new ConcurrentHashMap<>();
+    private final Object activation = new Object();
+    private final Metrics metrics = new Metrics();
+    private ObjectName metricsName;
 
-    private void init(final String secret, final String destination, final String command, final String expiration)
+    private void init(final String name, final Function<String, String> parameters, final ServletContext context)
             throws ServletException {
 
+        this.context = context;
+
+        final String secret = parameters.apply(PARAMETER_SECRET);
         if (Objects.isNull(secret)
                 || secret.isBlank())
             throw new ServletException("Invalid parameter: " + PARAMETER_SECRET);
         this.secret = secret.trim();
 
+        final String destination = parameters.apply(PARAMETER_DESTINATION);
         if (Objects.isNull(destination)
                 || destination.isBlank())
             throw new ServletException("Invalid parameter: " + PARAMETER_DESTINATION);
         this.destination = new File(destination.trim());
 
+        // The temporary files are created on the file system of the
+        // destination file by default, so that the activation is an atomic
+        // rename and not a copy.
+        final String staging = parameters.apply(PARAMETER_STAGING);
+        if (Objects.nonNull(staging)
+                && !staging.isBlank()) {
+            this.staging = new File(staging.trim()).getAbsoluteFile();
+            if (!this.staging.isDirectory())
+                throw new ServletException("Invalid parameter: " + PARAMETER_STAGING);
+        } else this.staging = this.destination.getAbsoluteFile().getParentFile();
+        if (Objects.isNull(this.staging)
+                || !this.staging.isDirectory())
+            this.staging = new File(System.getProperty("java.io.tmpdir"));
+        try {final File directory = this.destination.getAbsoluteFile().getParentFile();
+            if (Objects.nonNull(directory)
+                    && directory.isDirectory()
+                    && !Files.getFileStore(directory.toPath()).equals(Files.getFileStore(this.staging.toPath())))
+                context.log(String.format("%s: Staging directory %s is not on the file system of %s, activation copies the file",
+                        RemoteDeploymentImpl.class.getSimpleName(), this.staging, this.destination));
+        } catch (IOException ignored) {
+        }
+
+        final String command = parameters.apply(PARAMETER_COMMAND);
         if (Objects.nonNull(command)
                 && !command.isBlank())
             this.command = command.trim();
 
+        final String expiration = parameters.apply(PARAMETER_EXPIRATION);
         if (Objects.nonNull(expiration)
                 && !expiration.isBlank())
             if (!expiration.matches("^\\s*\\d{1,8}\\s*$"))
                 throw new ServletException("Invalid parameter: " + PARAMETER_EXPIRATION);
             else this.expiration = Integer.valueOf(expiration.trim());
+
+        int workers = 1;
+        final String workersParameter = parameters.apply(PARAMETER_WORKERS);
+        if (Objects.nonNull(workersParameter)
+                && !workersParameter.isBlank())
+            if (!workersParameter.matches("^\\s*0*[1-9]\\d{0,3}\\s*$"))
+                throw new ServletException("Invalid parameter: " + PARAMETER_WORKERS);
+            else workers = Integer.valueOf(workersParameter.trim());
+
+        boolean virtual = false;
+        final String virtualParameter = parameters.apply(PARAMETER_VIRTUAL);
+        if (Objects.nonNull(virtualParameter)
+                && !virtualParameter.isBlank())
+            if (!virtualParameter.matches("^(?i)\\s*(true|false|on|off)\\s*$"))
+                throw new ServletException("Invalid parameter: " + PARAMETER_VIRTUAL);
+            else virtual = virtualParameter.matches("^(?i)\\s*(true|on)\\s*$");
+
+        final String async = parameters.apply(PARAMETER_ASYNC);
+        if (Objects.nonNull(async)
+                && !async.isBlank())
+            if (!async.matches("^(?i)\\s*(true|false|on|off)\\s*$"))
+                throw new ServletException("Invalid parameter: " + PARAMETER_ASYNC);
+            else this.async = async.matches("^(?i)\\s*(true|on)\\s*$");
+
+        final String cache = parameters.apply(PARAMETER_CACHE);
+        if (Objects.nonNull(cache)
+                && !cache.isBlank())
+            if (!cache.matches("^\\s*\\d{1,18}\\s*$"))
+                throw new ServletException("Invalid parameter: " + PARAMETER_CACHE);
+            else if (Long.valueOf(cache.trim()) > 0)
+                try {this.cache = new PackageCache(this.instance, Long.valueOf(cache.trim()));
+                } catch (IOException exception) {
+                    throw new ServletException(exception);
+                }
+
+        final String relay = parameters.apply(PARAMETER_RELAY);
+        if (Objects.nonNull(relay)
+                && !relay.isBlank()) {
+            if (!relay.matches("^(?i)\\s*https?://[^\\s,]+(\\s*,\\s*https?://[^\\s,]+)*\\s*$"))
+                throw new ServletException("Invalid parameter: " + PARAMETER_RELAY);
+            try {this.relay = Arrays.stream(relay.trim().split("\\s*,\\s*"))
+                        .map(URI::create)
+                        .toArray(URI[]::new);
+            } catch (IllegalArgumentException exception) {
+                throw new ServletException("Invalid parameter: " + PARAMETER_RELAY, exception);
+            }
+            this.relayClient = HttpClient.newBuilder()
+                    .connectTimeout(Duration.ofMillis(RELAY_CONNECT_TIMEOUT))
+                    .build();
+        }
+
+        final String limit = parameters.apply(PARAMETER_LIMIT);
+        if (Objects.nonNull(limit)
+                && !limit.isBlank())
+            if (!limit.matches("^\\s*\\d{1,18}\\s*$"))
+                throw new ServletException("Invalid parameter: " + PARAMETER_LIMIT);
+            else if (Long.valueOf(limit.trim()) > 0)
+                this.throttle = new PackageThrottle(Long.valueOf(limit.trim()));
+
+        // The temporary files are kept in a hidden directory, whose name is
+        // derived from the destination file, so that it is the same after a
+        // restart and is not deployed by the container, e.g. if the staging
+        // directory is the appBase. Each instance uses its own subdirectory
+        // there, which only contains the files of its uploads and is removed
+        // with the instance. So several instances with the same destination,
+        // e.g. during a redeployment, do not share their files. The directory
+        // is created last, so that invalid parameters do not leave an empty
+        // directory.
+        final File stagingDirectory = new File(this.staging, String.format(".%s-%08X.staging",
+                this.destination.getName(), this.destination.getAbsolutePath().hashCode()));
+        if (!stagingDirectory.isDirectory()
+                && !stagingDirectory.mkdirs())
+            throw new ServletException("Invalid parameter: " + PARAMETER_STAGING);
+
+        // An instance holds a lock on the file <instance>.lock as long as it
+        // runs and creates its subdirectory only after that. Subdirectories
+        // whose lock is free are left over from a crash. The states of the
+        // uploads were only kept in memory, so the files cannot be resumed and
+        // are deleted.
+        this.staging = new File(stagingDirectory, this.instance);
+        FileChannel stagingChannel = null;
+        try {stagingChannel = FileChannel.open(new File(stagingDirectory, this.instance + ".lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.stagingLock = stagingChannel.lock();
+            if (!this.staging.mkdir())
+                throw new IOException("Staging directory cannot be created: " + this.staging);
+        } catch (IOException exception) {
+            if (Objects.nonNull(stagingChannel))
+                try {stagingChannel.close();
+                } catch (IOException ignored) {
+                }
+            throw new ServletException("Invalid parameter: " + PARAMETER_STAGING, exception);
+        }
+        final File[] directories = stagingDirectory.listFiles(File::isDirectory);
+        for (final File directory : Objects.nonNull(directories) ? directories : new File[0])
+            if (!directory.equals(this.staging))
+                RemoteDeploymentImpl.deleteStaging(directory);
+
+        // The completion of uploads (merge, checksum, activation and command)
+        // is done by a bounded executor, so that the request threads of the
+        // servlet container are not occupied. The threads are daemons, so
+        // that a long-running command does not prevent the shutdown.
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), RemoteDeploymentImpl.createThreadFactory(virtual));
+        ((ThreadPoolExecutor)this.executor).allowCoreThreadTimeOut(true);
+
+        // Expired uploads are cleaned up in the background, so that requests
+        // do not have to check the staging directory. The interval is a
+        // quarter of the expiration, between one second and one minute.
+        if (this.expiration > 0) {
+            final long interval = Math.min(Math.max(this.expiration /4, 1000), 60000);
+            this.janitor = Executors.newSingleThreadScheduledExecutor(RemoteDeploymentImpl.createThreadFactory(false));
+            this.janitor.scheduleWithFixedDelay(this::expirePackages, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        // The metrics are optional, if the registration fails, e.g. because
+        // JMX is restricted, the deployment works without them.
+        try {this.metricsName = new ObjectName(String.format("com.seanox:type=RemoteDeployment,name=%s,instance=%s",
+                    ObjectName.quote(Objects.nonNull(name) ? name : ""), this.instance));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this.metrics, this.metricsName);
+        } catch (Exception | LinkageError exception) {
+            this.metricsName = null;
+            context.log(String.format("%s: Registration of metrics failed",
+                    RemoteDeploymentImpl.class.getSimpleName()), exception);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(final boolean virtual) {
+
+        // Virtual threads are only available as of Java 21 and are therefore
+        // created via reflection. If they are not available, platform threads
+        // are used.
+        if (virtual)
+            try {Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class)
+                        .invoke(builder, RemoteDeploymentImpl.class.getSimpleName() + "-", 1L);
+                return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException ignored) {
+            }
+
+        final AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, RemoteDeploymentImpl.class.getSimpleName() + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void deleteStaging(final File directory) {
+
+        // The subdirectory of another instance is only deleted, if its lock
+        // can be acquired, so that the instance has ended. Within the same
+        // JVM, the lock of a running instance causes an
+        // OverlappingFileLockException instead.
+        final File lock = new File(directory.getParentFile(), directory.getName() + ".lock");
+        try (final FileChannel channel = FileChannel.open(lock.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (Objects.isNull(channel.tryLock()))
+                return;
+            final File[] files = directory.listFiles();
+            if (Objects.nonNull(files))
+                Arrays.stream(files).forEach(File::delete);
+            if (directory.delete())
+                lock.delete();
+        } catch (IOException | OverlappingFileLockException ignored) {
+        }
+    }
+
+    private void expirePackages() {
+
+        // The states of the uploads in memory are the index of the temporary
+        // files, so the staging directory is never scanned. The files of
+        // incomplete uploads are deleted by their names. Completed uploads
+        // have already moved or deleted their files, only their state, which
+        // answers chunks sent again with status 423, expires. A state expires
+        // atomically per UUID with computeIfPresent: once expired, it can no
+        // longer be acquired and a request creates a new state, but only after
+        // the files have been deleted here.
+        final long expiration = System.currentTimeMillis() -this.expiration;
+        try {for (final String uuid : this.packageStates.keySet())
+                this.packageStates.computeIfPresent(uuid, (key, packageState) -> {
+                    if (!packageState.expire(expiration))
+                        return packageState;
+                    if (packageState.received.get() < packageState.count) {
+                        new File(this.staging, uuid + ".temp").delete();
+                        for (int number = 1; number <= packageState.count; number++) {
+                            new File(this.staging, uuid + "_" + number + ".temp").delete();
+                            new File(this.staging, uuid + "_" + number + ".work").delete();
+                        }
+                    }
+                    return null;
+                });
+        } catch (RuntimeException exception) {
+            this.context.log(String.format("%s: Clean up of expired uploads failed",
+                    RemoteDeploymentImpl.class.getSimpleName()), exception);
+        }
     }
 
     void init(final FilterConfig config)
             throws ServletException {
-        this.init(config.getInitParameter(PARAMETER_SECRET),
-                config.getInitParameter(PARAMETER_DESTINATION),
-                config.getInitParameter(PARAMETER_COMMAND),
-                config.getInitParameter(PARAMETER_EXPIRATION));
+        this.init(config.getFilterName(), config::getInitParameter, config.getServletContext());
     }
 
     void init(final ServletConfig config)
             throws ServletException {
-        this.init(config.getInitParameter(PARAMETER_SECRET),
-                config.getInitParameter(PARAMETER_DESTINATION),
-                config.getInitParameter(PARAMETER_COMMAND),
-                config.getInitParameter(PARAMETER_EXPIRATION));
+        this.init(config.getServletName(), config::getInitParameter, config.getServletContext());
     }
 
     private static class PackageMeta {
         private String uuid;
         private String secret;
         private int number;
+        private int last;
         private int count;
         private String checkSum;
+        private long offset = -1;
+        private long length;
+        private long size;
+        private String packageCheckSum;
+        private String encoding;
+        private String deltaCheckSum;
+        private String packageHash;
     }
 
     private static PackageMeta detectPackageMeta(final HttpServletRequest request) {
         if (Objects.isNull(request))
             return null;
         final String packageMetaHeader = request.getHeader(HTTP_HEADER_PACKAGE);
-        final String packageMetaHeaderPattern = "^(?i)([0-9a-z](?:[\\w-]*[0-9a-z])*)/([0-9a-z](?:[\\w-]*[0-9a-z])*)/(\\d+)/(\\d+)/((?:[0-9A-F]{2})+)$";
+        final String packageMetaHeaderPattern = "^(?i)([0-9a-z](?:[\\w-]*[0-9a-z])*)/([0-9a-z](?:[\\w-]*[0-9a-z])*)/(\\d+)(?:-(\\d+))?/(\\d+)/((?:[0-9A-F]{2})+)$";
         if (Objects.isNull(packageMetaHeader)
                 || !packageMetaHeader.matches(packageMetaHeaderPattern))
             return null;
@@ -140,36 +591,1613 @@ class RemoteDeploymentImpl {
         packageMeta.uuid = packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$1");
         packageMeta.secret = packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$2");
         packageMeta.number = Integer.valueOf(packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$3"));
-        packageMeta.count = Integer.valueOf(packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$4"));
-        packageMeta.checkSum = packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$5");
+        packageMeta.count = Integer.valueOf(packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$5"));
+        packageMeta.checkSum = packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$6");
+
+        // Optionally, a request contains several consecutive chunks as one
+        // range of numbers, e.g. 3-5, which requires the Package-Range header.
+        final String packageMetaLast = packageMetaHeader.replaceAll(packageMetaHeaderPattern, "$4");
+        packageMeta.last = packageMetaLast.isEmpty() ? packageMeta.number : Integer.valueOf(packageMetaLast);
+        if (packageMeta.last < packageMeta.number)
+            return null;
+
+        // Optionally, the checksum of the chunk is sent as
+        // Package-Checksum: <MD5 of the chunk>
+        final String packageCheckSumHeader = request.getHeader(HTTP_HEADER_PACKAGE_CHECKSUM);
+        final String packageCheckSumHeaderPattern = "^\\s*((?:[0-9A-Fa-f]{2})+)\\s*$";
+        if (Objects.nonNull(packageCheckSumHeader)) {
+            if (!packageCheckSumHeader.matches(packageCheckSumHeaderPattern))
+                return null;
+            packageMeta.packageCheckSum = packageCheckSumHeader.replaceAll(packageCheckSumHeaderPattern, "$1");
+        }
+
+        // Optionally, the chunk is part of a delta to the destination file,
+        // the header contains the checksum of the delta.
+        // Package-Delta: <MD5 of the delta>
+        final String packageDeltaHeader = request.getHeader(HTTP_HEADER_PACKAGE_DELTA);
+        if (Objects.nonNull(packageDeltaHeader)) {
+            if (!packageDeltaHeader.matches(packageCheckSumHeaderPattern))
+                return null;
+            packageMeta.deltaCheckSum = packageDeltaHeader.replaceAll(packageCheckSumHeaderPattern, "$1");
+        }
+
+        // Optionally, the chunk is sent compressed as
+        // Content-Encoding: deflate
+        final String contentEncodingHeader = request.getHeader(HTTP_HEADER_CONTENT_ENCODING);
+        if (Objects.nonNull(contentEncodingHeader)
+                && !contentEncodingHeader.isBlank())
+            packageMeta.encoding = contentEncodingHeader.trim().toLowerCase();
+
+        // Optionally, the position of the chunk in the file is sent as
+        // Package-Range: <first byte>-<last byte>/<file size>
+        final String packageRangeHeader = request.getHeader(HTTP_HEADER_PACKAGE_RANGE);
+        final String packageRangeHeaderPattern = "^\\s*(\\d{1,18})-(\\d{1,18})/(\\d{1,18})\\s*$";
+        if (Objects.isNull(packageRangeHeader))
+            return packageMeta;
+        if (!packageRangeHeader.matches(packageRangeHeaderPattern))
+            return null;
+        packageMeta.offset = Long.valueOf(packageRangeHeader.replaceAll(packageRangeHeaderPattern, "$1"));
+        packageMeta.length = Long.valueOf(packageRangeHeader.replaceAll(packageRangeHeaderPattern, "$2")) -packageMeta.offset +1;
+        packageMeta.size = Long.valueOf(packageRangeHeader.replaceAll(packageRangeHeaderPattern, "$3"));
+        if (packageMeta.length <= 0
+                || packageMeta.offset +packageMeta.length > packageMeta.size)
+            return null;
         return packageMeta;
     }
 
-    private static String calcFileCheckSum(final File file)
-            throws Exception {
-        final MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-        try (final InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
-            final byte[] buffer = new byte[0xFFFF];
-            for (int size; (size = inputStream.read(buffer)) >= 0;)
-                messageDigest.update(buffer, 0, size);
-            final StringBuilder result = new StringBuilder();
-            for (final byte digit : messageDigest.digest())
-                result.append(String.format("%02x", digit));
-            return result.toString().toUpperCase();
+    private static String encodeHex(final byte[] bytes) {
+        final StringBuilder result = new StringBuilder();
+        for (final byte digit : bytes)
+            result.append(String.format("%02x", digit));
+        return result.toString().toUpperCase();
+    }
+
+    /**
+     * Checksum of a package file that is updated while the chunks are written.
+     * A chunk that starts exactly at the current position of the checksum is
+     * included directly when it is written. Chunks that arrive earlier are
+     * noted and included when the gap before them is closed, only then their
+     * region has to be read again. With chunks in order, no data is read
+     * again and the checksum is complete with the last chunk.
+     */
+    private static class PackageDigest {
+
+        private MessageDigest messageDigest;
+        private MessageDigest messageDigestBackup;
+        private long position;
+        private boolean locked;
+        private final TreeMap<Long, Long> ranges;
+
+        private PackageDigest() {
+            try {this.messageDigest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException exception) {
+                throw new IllegalStateException(exception);
+            }
+            this.ranges = new TreeMap<>();
+        }
+
+        private synchronized boolean acquire(final long offset) {
+            if (this.locked
+                    || this.position != offset)
+                return false;
+            try {this.messageDigestBackup = (MessageDigest)this.messageDigest.clone();
+            } catch (CloneNotSupportedException exception) {
+                return false;
+            }
+            this.locked = true;
+            return true;
+        }
+
+        private void update(final byte[] bytes, final int offset, final int length) {
+            this.messageDigest.update(bytes, offset, length);
+        }
+
+        private synchronized void release(final long length) {
+            this.position += length;
+            this.locked = false;
+            this.notifyAll();
+        }
+
+        private synchronized void abort() {
+            this.messageDigest = this.messageDigestBackup;
+            this.locked = false;
+            this.notifyAll();
+        }
+
+        private synchronized void append(final long offset, final long length) {
+            this.ranges.put(offset, length);
+        }
+
+        private void update(final FileChannel channel)
+                throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(0xFFFF);
+            while (true) {
+                final long offset;
+                final long length;
+                synchronized (this) {
+                    if (this.locked
+                            || !this.ranges.containsKey(this.position))
+                        return;
+                    offset = this.position;
+                    length = this.ranges.remove(offset);
+                    this.locked = true;
+                }
+                try {for (long position = offset; position < offset +length;) {
+                        buffer.clear().limit((int)Math.min(buffer.capacity(), offset +length -position));
+                        final int size = channel.read(buffer, position);
+                        if (size < 0)
+                            throw new IOException("Unexpected end of package");
+                        this.messageDigest.update(buffer.array(), 0, size);
+                        position += size;
+                    }
+                } catch (IOException exception) {
+                    synchronized (this) {
+                        this.ranges.put(offset, length);
+                        this.locked = false;
+                        this.notifyAll();
+                    }
+                    throw exception;
+                }
+                this.release(length);
+            }
+        }
+
+        private String complete(final FileChannel channel)
+                throws IOException, InterruptedException {
+            while (true) {
+                synchronized (this) {
+                    while (this.locked)
+                        this.wait();
+                    if (!this.ranges.containsKey(this.position))
+                        return RemoteDeploymentImpl.encodeHex(this.messageDigest.digest());
+                }
+                this.update(channel);
+            }
+        }
+
+    }
+
+    /**
+     * State of an upload in memory. The chunks are noted in an array with one
+     * entry per chunk, which is only changed with compare-and-set. Thus, a
+     * chunk is accepted only once and the request that completes the last
+     * chunk is determined by a counter, without locks and without looking into
+     * the file system.
+     */
+    private static class PackageState {
+
+        private static final int PACKAGE_RECEIVING = 1;
+        private static final int PACKAGE_RECEIVED = 2;
+
+        private final int count;
+        private final long size;
+        private final AtomicBoolean allocated;
+        private final AtomicIntegerArray packages;
+        private final AtomicInteger received;
+        private final AtomicInteger receiving;
+        private final PackageDigest digest;
+        private final Collection<CompletableFuture<Void>> relays;
+        private volatile long timing;
+
+        private PackageState(final int count, final long size) {
+
+            // With a range, the total size of the upload is determined by the
+            // first chunk and all other chunks must have the same size. A size
+            // less than 0 means an upload without range.
+            this.count = count;
+            this.size = size;
+            this.allocated = new AtomicBoolean();
+            this.packages = new AtomicIntegerArray(count);
+            this.received = new AtomicInteger();
+            this.receiving = new AtomicInteger();
+            this.digest = size >= 0 ? new PackageDigest() : null;
+            this.relays = ConcurrentHashMap.newKeySet();
+            this.timing = System.currentTimeMillis();
+        }
+
+        private boolean acquire(final int first, final int last) {
+
+            // The counter of the receiving requests is reserved first, so
+            // that the state cannot expire meanwhile. An expired state is
+            // marked with -1 and can no longer be acquired.
+            int receiving;
+            do {receiving = this.receiving.get();
+                if (receiving < 0)
+                    return false;
+            } while (!this.receiving.compareAndSet(receiving, receiving +1));
+            this.timing = System.currentTimeMillis();
+
+            // Several consecutive chunks are acquired completely or not at
+            // all, chunks already acquired are released again then.
+            for (int number = first; number <= last; number++)
+                if (!this.packages.compareAndSet(number -1, 0, PACKAGE_RECEIVING)) {
+                    while (--number >= first)
+                        this.packages.set(number -1, 0);
+                    this.receiving.decrementAndGet();
+                    return false;
+                }
+            return true;
+        }
+
+        private void abort(final int first, final int last) {
+            for (int number = first; number <= last; number++)
+                this.packages.set(number -1, 0);
+            this.receiving.decrementAndGet();
+        }
+
+        private boolean release(final int first, final int last) {
+            this.timing = System.currentTimeMillis();
+            for (int number = first; number <= last; number++)
+                this.packages.set(number -1, PACKAGE_RECEIVED);
+            this.receiving.decrementAndGet();
+            return this.received.addAndGet(last -first +1) == this.count;
+        }
+
+        private boolean isReceived(final int number) {
+            return this.packages.get(number -1) == PACKAGE_RECEIVED;
+        }
+
+        private boolean isReceived(final int first, final int last) {
+            for (int number = first; number <= last; number++)
+                if (!this.isReceived(number))
+                    return false;
+            return true;
+        }
+
+        private boolean allocate() {
+            return this.allocated.compareAndSet(false, true);
+        }
+
+        private boolean expire(final long expiration) {
+            return this.timing <= expiration
+                    && this.receiving.compareAndSet(0, -1);
+        }
+
+        private boolean isExpired() {
+            return this.receiving.get() < 0;
+        }
+    }
+
+    /**
+     * Content-addressed store of received chunks with a limited size. The
+     * chunks are stored as files in a separate directory of the instance and
+     * are found by their SHA-256. If the size is exceeded, the chunks used
+     * least recently are removed.
+     */
+    private static class PackageCache {
+
+        private final File directory;
+        private final long capacity;
+        private final LinkedHashMap<String, Long> entries;
+        private long size;
+
+        private PackageCache(final String instance, final long capacity)
+                throws IOException {
+            this.directory = Files.createTempDirectory(instance + "---cache-").toFile();
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        private synchronized InputStream open(final String hash)
+                throws IOException {
+
+            // The map is ordered by access, so that a chunk taken from the
+            // cache is removed last. Only get counts as an access.
+            if (Objects.isNull(this.entries.get(hash)))
+                return null;
+            return new FileInputStream(new File(this.directory, hash));
+        }
+
+        private void put(final String hash, final File file, final long offset, final long length)
+                throws IOException {
+
+            if (length > this.capacity)
+                return;
+            synchronized (this) {
+                if (Objects.nonNull(this.entries.get(hash)))
+                    return;
+            }
+
+            // The chunk is copied into a temporary file and only then added,
+            // so incomplete chunks are never found.
+            final File cacheFile = new File(this.directory, hash);
+            final File cacheTempFile = File.createTempFile(hash, ".temp", this.directory);
+            try (final FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                    final FileChannel target = FileChannel.open(cacheTempFile.toPath(), StandardOpenOption.WRITE)) {
+                for (long position = offset; position < offset +length;)
+                    position += source.transferTo(position, offset +length -position, target);
+            } catch (IOException exception) {
+                cacheTempFile.delete();
+                throw exception;
+            }
+
+            synchronized (this) {
+                Files.move(cacheTempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                if (Objects.isNull(this.entries.put(hash, length)))
+                    this.size += length;
+                final Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+                while (this.size > this.capacity
+                        && iterator.hasNext()) {
+                    final Map.Entry<String, Long> entry = iterator.next();
+                    new File(this.directory, entry.getKey()).delete();
+                    this.size -= entry.getValue();
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized void clear() {
+            Arrays.stream(this.directory.listFiles())
+                    .forEach(File::delete);
+            this.directory.delete();
+            this.entries.clear();
+            this.size = 0;
+        }
+    }
+
+    /**
+     * Histogram of times with buckets as powers of two of microseconds. Only
+     * atomic counters are updated, without locks and allocation, so that it
+     * can be used while receiving.
+     */
+    private static class MetricsHistogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE +1);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong maximum = new AtomicLong();
+
+        private void record(final long nanos) {
+            final long micros = Math.max(nanos /1000, 0);
+            this.buckets.incrementAndGet(Long.SIZE -Long.numberOfLeadingZeros(micros));
+            this.total.add(micros);
+            this.maximum.accumulateAndGet(micros, Math::max);
+        }
+
+        private long percentile(final long[] buckets, final long count, final double percentile) {
+            final long rank = (long)Math.ceil(count *percentile);
+            long sum = 0;
+            for (int index = 0; index < buckets.length; index++)
+                if ((sum += buckets[index]) >= rank)
+                    return Math.min(index < Long.SIZE -1 ? (1L << index) -1 : Long.MAX_VALUE, this.maximum.get());
+            return this.maximum.get();
+        }
+
+        private Map<String, Long> snapshot() {
+            final long[] buckets = new long[this.buckets.length()];
+            long count = 0;
+            for (int index = 0; index < buckets.length; index++)
+                count += buckets[index] = this.buckets.get(index);
+            final Map<String, Long> snapshot = new LinkedHashMap<>();
+            snapshot.put("count", count);
+            snapshot.put("mean", count > 0 ? this.total.sum() /count : 0);
+            snapshot.put("max", this.maximum.get());
+            snapshot.put("p50", count > 0 ? this.percentile(buckets, count, 0.5) : 0);
+            snapshot.put("p90", count > 0 ? this.percentile(buckets, count, 0.9) : 0);
+            snapshot.put("p99", count > 0 ? this.percentile(buckets, count, 0.99) : 0);
+            return snapshot;
+        }
+    }
+
+    private class Metrics implements RemoteDeploymentMXBean {
+
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder packagesReceived = new LongAdder();
+        private final LongAdder packagesCached = new LongAdder();
+        private final LongAdder packagesLocked = new LongAdder();
+        private final LongAdder packagesCorrupted = new LongAdder();
+        private final LongAdder packagesFailed = new LongAdder();
+        private final LongAdder uploadsCompleted = new LongAdder();
+        private final LongAdder uploadsFailed = new LongAdder();
+        private final MetricsHistogram receiveTime = new MetricsHistogram();
+        private final MetricsHistogram completionTime = new MetricsHistogram();
+        private final MetricsHistogram commandTime = new MetricsHistogram();
+
+        private void receive(final PackageReceiver packageReceiver) {
+            this.packagesReceived.add(packageReceiver.packageMeta.last -packageReceiver.packageMeta.number +1);
+            this.bytesReceived.add(packageReceiver.size());
+            this.receiveTime.record(System.nanoTime() -packageReceiver.timing);
+        }
+
+        @Override
+        public long getBytesReceived() {
+            return this.bytesReceived.sum();
+        }
+
+        @Override
+        public long getPackagesReceived() {
+            return this.packagesReceived.sum();
+        }
+
+        @Override
+        public long getPackagesCached() {
+            return this.packagesCached.sum();
+        }
+
+        @Override
+        public long getPackagesLocked() {
+            return this.packagesLocked.sum();
+        }
+
+        @Override
+        public long getPackagesCorrupted() {
+            return this.packagesCorrupted.sum();
+        }
+
+        @Override
+        public long getPackagesFailed() {
+            return this.packagesFailed.sum();
+        }
+
+        @Override
+        public long getUploadsCompleted() {
+            return this.uploadsCompleted.sum();
+        }
+
+        @Override
+        public long getUploadsFailed() {
+            return this.uploadsFailed.sum();
+        }
+
+        @Override
+        public int getUploadsActive() {
+            return (int)RemoteDeploymentImpl.this.packageStates.values().stream()
+                    .filter(packageState -> packageState.received.get() < packageState.count)
+                    .count();
+        }
+
+        @Override
+        public int getUploadsQueued() {
+            final ExecutorService executor = RemoteDeploymentImpl.this.executor;
+            return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor)executor).getQueue().size() : 0;
+        }
+
+        @Override
+        public Map<String, Long> getReceiveTime() {
+            return this.receiveTime.snapshot();
+        }
+
+        @Override
+        public Map<String, Long> getCompletionTime() {
+            return this.completionTime.snapshot();
+        }
+
+        @Override
+        public Map<String, Long> getCommandTime() {
+            return this.commandTime.snapshot();
+        }
+    }
+
+    @Name("com.seanox.RemoteDeployment.PackageReceived")
+    @Label("Package Received")
+    @Description("Receiving of a chunk or a range of chunks, including writing")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class PackageReceivedEvent extends Event {
+        @Label("UUID") private String uuid;
+        @Label("Number") private int number;
+        @Label("Last Number") private int last;
+        @Label("Count") private int count;
+        @Label("Size") @DataAmount private long size;
+        @Label("Encoding") private String encoding;
+        @Label("Cached") private boolean cached;
+        @Label("Successful") private boolean successful;
+    }
+
+    @Name("com.seanox.RemoteDeployment.PackageMerge")
+    @Label("Package Merge")
+    @Description("Merge of the chunks of an upload into one file, including the checksum")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class PackageMergeEvent extends Event {
+        @Label("UUID") private String uuid;
+        @Label("Count") private int count;
+        @Label("Size") @DataAmount private long size;
+    }
+
+    @Name("com.seanox.RemoteDeployment.PackageChecksum")
+    @Label("Package Checksum")
+    @Description("Completion of the checksum of an upload written with ranges")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class PackageChecksumEvent extends Event {
+        @Label("UUID") private String uuid;
+        @Label("Size") @DataAmount private long size;
+    }
+
+    @Name("com.seanox.RemoteDeployment.PackageRebuild")
+    @Label("Package Rebuild")
+    @Description("Rebuild of the file from the destination file and a delta")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class PackageRebuildEvent extends Event {
+        @Label("UUID") private String uuid;
+        @Label("Delta Size") @DataAmount private long delta;
+        @Label("Size") @DataAmount private long size;
+    }
+
+    @Name("com.seanox.RemoteDeployment.PackageMove")
+    @Label("Package Move")
+    @Description("Move of a file of an upload, e.g. the activation of the destination file")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class PackageMoveEvent extends Event {
+        @Label("Source") private String source;
+        @Label("Target") private String target;
+        @Label("Size") @DataAmount private long size;
+        @Label("Atomic") private boolean atomic;
+    }
+
+    @Name("com.seanox.RemoteDeployment.Command")
+    @Label("Command")
+    @Description("Execution of the command after the activation of the destination file")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class CommandEvent extends Event {
+        @Label("Command") private String command;
+        @Label("Successful") private boolean successful;
+    }
+
+    private static void movePackage(final File source, final File target)
+            throws IOException {
+
+        // An atomic move replaces the target in one step, so that the target
+        // is never incomplete. This is only possible within one file system,
+        // otherwise the file is copied.
+        final PackageMoveEvent event = new PackageMoveEvent();
+        event.begin();
+        try {Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            event.atomic = true;
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
+        if (!event.shouldCommit())
+            return;
+        event.source = source.getPath();
+        event.target = target.getPath();
+        event.size = target.length();
+        event.commit();
     }
 
     static class UnsupportedRequestException extends ServletException {
     }
 
+    /** Status for a chunk whose data does not match Package-Checksum */
+    private static final int SC_PACKAGE_CHECKSUM_MISMATCH = 422;
+
+    /** Status for a chunk that has already been received */
+    private static final int SC_PACKAGE_LOCKED = 423;
+
+    private static class PackageChecksumException extends IOException {
+    }
+
+    /**
+     * Token bucket for limiting the received bytes per second. The bucket is
+     * filled with the rate per second up to the content of one second. Taking
+     * the bytes read is always possible, the bucket can become negative. The
+     * result is then the time in milliseconds until the deficit is balanced
+     * and the next data can be read.
+     */
+    private static class PackageThrottle {
+
+        private final long rate;
+        private double tokens;
+        private long timing;
+
+        private PackageThrottle(final long rate) {
+            this.rate = rate;
+            this.tokens = rate;
+            this.timing = System.nanoTime();
+        }
+
+        private synchronized long take(final long size) {
+            final long timing = System.nanoTime();
+            this.tokens = Math.min(this.rate, this.tokens +(timing -this.timing) *(double)this.rate /1000000000L);
+            this.timing = timing;
+            this.tokens -= size;
+            return this.tokens >= 0 ? 0 : (long)Math.ceil(-this.tokens *1000 /this.rate);
+        }
+    }
+
+    /**
+     * Receiving of the data of a chunk. The receiver decompresses the data if
+     * necessary, checks the range of the chunk and updates the checksums,
+     * writing the data is done by the caller. So the same logic is used for
+     * blocking and non-blocking I/O.
+     */
+    private static class PackageReceiver {
+
+        private final File file;
+        private final PackageMeta packageMeta;
+        private final PackageState packageState;
+        private final PackageDigest packageDigest;
+        private final MessageDigest messageDigest;
+        private final MessageDigest hashDigest;
+        private final Inflater inflater;
+        private final byte[] bytes;
+        private final boolean digest;
+        private final long limit;
+        private final CompletableFuture<Void> relay;
+        private final long timing;
+        private final PackageReceivedEvent event;
+        private ByteBuffer input;
+        private long position;
+        private long offset;
+        private String hash;
+
+        private PackageReceiver(final File file, final PackageMeta packageMeta, final PackageState packageState,
+                final boolean hash, final boolean relay)
+                throws IOException {
+
+            this.file = file;
+            this.packageMeta = packageMeta;
+            this.packageState = packageState;
+            this.packageDigest = packageState.digest;
+            this.relay = relay ? new CompletableFuture<>() : null;
+            this.timing = System.nanoTime();
+            this.event = new PackageReceivedEvent();
+            this.event.begin();
+
+            // With a range, the file is preallocated once with the total size
+            // of the upload. All chunks use the same file and write only their
+            // own region, so the order of the chunks and parallel writing do
+            // not matter. Without a range, each chunk has its own file.
+            try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                if (Objects.nonNull(this.packageDigest)) {
+                    if (packageState.allocate())
+                        randomAccessFile.setLength(packageState.size);
+                } else if (randomAccessFile.length() != 0)
+                    randomAccessFile.setLength(0);
+            }
+
+            // For the cache, the SHA-256 of the chunk is calculated.
+            try {this.messageDigest = Objects.nonNull(packageMeta.packageCheckSum) ? MessageDigest.getInstance("MD5") : null;
+                this.hashDigest = hash ? MessageDigest.getInstance("SHA-256") : null;
+            } catch (NoSuchAlgorithmException exception) {
+                throw new IOException(exception);
+            }
+
+            // Compressed chunks are decompressed while they are received. The
+            // checksums always refer to the uncompressed data.
+            this.inflater = ("deflate").equals(packageMeta.encoding) ? new Inflater() : null;
+            this.bytes = Objects.nonNull(this.inflater) ? new byte[0xFFFF] : null;
+
+            this.position = Objects.nonNull(this.packageDigest) ? packageMeta.offset : 0;
+            this.limit = Objects.nonNull(this.packageDigest) ? packageMeta.offset +packageMeta.length : Long.MAX_VALUE;
+            this.digest = Objects.nonNull(this.packageDigest)
+                    && this.packageDigest.acquire(packageMeta.offset);
+        }
+
+        private void receive(final byte[] bytes, final int size) {
+            if (Objects.nonNull(this.inflater))
+                this.inflater.setInput(bytes, 0, size);
+            else this.input = ByteBuffer.wrap(bytes, 0, size);
+        }
+
+        private ByteBuffer next()
+                throws IOException {
+
+            // Returns the next data to be written at offset, or null if the
+            // received data has been processed completely. The buffer is
+            // reused, so the data must be written before the next call.
+            final ByteBuffer buffer;
+            if (Objects.nonNull(this.inflater)) {
+                final int size;
+                try {size = this.inflater.inflate(this.bytes);
+                } catch (DataFormatException exception) {
+                    throw new IOException(exception);
+                }
+                if (size <= 0) {
+                    if (this.inflater.needsInput()
+                            || this.inflater.finished())
+                        return null;
+                    throw new IOException("Unsupported compression of package");
+                }
+                buffer = ByteBuffer.wrap(this.bytes, 0, size);
+            } else buffer = this.input;
+            this.input = null;
+            if (Objects.isNull(buffer))
+                return null;
+
+            final int size = buffer.remaining();
+            if (this.position +size > this.limit)
+                throw new IOException("Package exceeds the range");
+            if (this.digest)
+                this.packageDigest.update(buffer.array(), buffer.position(), size);
+            if (Objects.nonNull(this.messageDigest))
+                this.messageDigest.update(buffer.array(), buffer.position(), size);
+            if (Objects.nonNull(this.hashDigest))
+                this.hashDigest.update(buffer.array(), buffer.position(), size);
+            this.offset = this.position;
+            this.position += size;
+            return buffer;
+        }
+
+        private long size() {
+            return this.position -(Objects.nonNull(this.packageDigest) ? this.packageMeta.offset : 0);
+        }
+
+        private boolean complete()
+                throws IOException {
+
+            if (Objects.nonNull(this.inflater)) {
+                final boolean finished = this.inflater.finished()
+                        && this.inflater.getRemaining() <= 0;
+                this.inflater.end();
+                if (!finished)
+                    throw new IOException("Package is incomplete");
+            }
+            if (Objects.nonNull(this.packageDigest)
+                    && this.position != this.limit)
+                throw new IOException("Package is incomplete");
+
+            // The optional checksum of the chunk is checked directly, so a
+            // corrupted chunk is rejected before the data of all chunks has
+            // been received and the sender can send it again.
+            if (Objects.nonNull(this.messageDigest)
+                    && !RemoteDeploymentImpl.encodeHex(this.messageDigest.digest()).equalsIgnoreCase(this.packageMeta.packageCheckSum))
+                throw new PackageChecksumException();
+            if (Objects.nonNull(this.hashDigest))
+                this.hash = RemoteDeploymentImpl.encodeHex(this.hashDigest.digest());
+            if (Objects.nonNull(this.packageMeta.packageHash)
+                    && !this.packageMeta.packageHash.equalsIgnoreCase(this.hash))
+                throw new PackageChecksumException();
+
+            // Two file extensions are used for saving: temp + work. Temp means
+            // the data is still being loaded and the file is not yet complete.
+            // Only with the successful end, the file extension work is set.
+            if (this.digest)
+                this.packageDigest.release(this.packageMeta.length);
+            else if (Objects.nonNull(this.packageDigest))
+                this.packageDigest.append(this.packageMeta.offset, this.packageMeta.length);
+            else this.file.renameTo(new File(this.file.getPath().replaceAll("\\.temp$", ".work")));
+
+            // A chunk that is forwarded to the peers is registered before it is
+            // released, so the completion of the upload waits for it.
+            if (Objects.nonNull(this.relay))
+                this.packageState.relays.add(this.relay);
+            this.record(true);
+            return this.packageState.release(this.packageMeta.number, this.packageMeta.last);
+        }
+
+        private void record(final boolean successful) {
+            if (!this.event.shouldCommit())
+                return;
+            this.event.uuid = this.packageMeta.uuid;
+            this.event.number = this.packageMeta.number;
+            this.event.last = this.packageMeta.last;
+            this.event.count = this.packageMeta.count;
+            this.event.size = this.size();
+            this.event.encoding = this.packageMeta.encoding;
+            this.event.cached = Objects.nonNull(this.packageMeta.packageHash);
+            this.event.successful = successful;
+            this.event.commit();
+        }
+
+        private void abort() {
+
+            // If the transfer of the chunk breaks off, the chunk is released
+            // again, so the sender can send the chunk again.
+            if (Objects.nonNull(this.inflater))
+                this.inflater.end();
+            if (this.digest)
+                this.packageDigest.abort();
+            if (Objects.isNull(this.packageDigest))
+                this.file.delete();
+            this.packageState.abort(this.packageMeta.number, this.packageMeta.last);
+            this.record(false);
+        }
+    }
+
+    /**
+     * Non-blocking receiving of a chunk. The data is read when the servlet
+     * container reports it as available and is written with an asynchronous
+     * file channel. While a write is pending, no data is read, so the buffer
+     * is used by only one operation at a time and no thread of the servlet
+     * container waits for the network or the file system. The input stream
+     * is only used by threads of the servlet container and never while the
+     * monitor of the listener is held, the file channel and the throttle hand
+     * the next read back to the servlet container.
+     */
+    private class PackageReadListener implements ReadListener, AsyncListener, CompletionHandler<Integer, ByteBuffer> {
+
+        private final AsyncContext asyncContext;
+        private final ServletInputStream inputStream;
+        private final AsynchronousFileChannel channel;
+        private final PackageReceiver packageReceiver;
+        private final File tempDirectory;
+        private final String uuid;
+        private final byte[] bytes;
+        private final AtomicInteger work;
+        private long position;
+        private boolean writing;
+        private boolean waiting;
+        private boolean finished;
+        private boolean done;
+
+        private PackageReadListener(final AsyncContext asyncContext, final AsynchronousFileChannel channel,
+                final PackageReceiver packageReceiver, final File tempDirectory, final String uuid)
+                throws IOException {
+            this.asyncContext = asyncContext;
+            this.inputStream = asyncContext.getRequest().getInputStream();
+            this.channel = channel;
+            this.packageReceiver = packageReceiver;
+            this.tempDirectory = tempDirectory;
+            this.uuid = uuid;
+            this.bytes = new byte[0xFFFF];
+            this.work = new AtomicInteger();
+        }
+
+        @Override
+        public void onDataAvailable() {
+            this.resume();
+        }
+
+        private void resume() {
+
+            // Only one thread reads at a time. Requests that arrive meanwhile
+            // are not lost, the reading thread repeats the loop for them.
+            if (this.work.getAndIncrement() != 0)
+                return;
+            do {this.read();
+            } while (this.work.decrementAndGet() != 0);
+        }
+
+        private void read() {
+            try {while (true) {
+                    synchronized (this) {
+                        if (this.done
+                                || this.writing
+                                || this.waiting)
+                            return;
+                        if (this.finished)
+                            break;
+                    }
+                    if (!this.inputStream.isReady())
+                        return;
+                    final int size = this.inputStream.read(this.bytes);
+                    if (size < 0)
+                        return;
+                    this.packageReceiver.receive(this.bytes, size);
+                    this.pause(size);
+                }
+            } catch (IOException | RuntimeException exception) {
+                this.abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exception);
+                return;
+            }
+            this.finish();
+        }
+
+        private void pause(final int size)
+                throws IOException {
+
+            // With a limit, reading is paused until the bucket allows the next
+            // data. No thread waits for this, a delayed task hands reading
+            // back to the container, and until then, the container does not
+            // read more data from the connection.
+            final PackageThrottle throttle = RemoteDeploymentImpl.this.throttle;
+            final long delay = Objects.nonNull(throttle) ? throttle.take(size) : 0;
+            synchronized (this) {
+                this.write();
+                this.waiting = delay > 0;
+            }
+            if (delay <= 0)
+                return;
+            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+                synchronized (this) {
+                    this.waiting = false;
+                }
+                this.dispatch();
+            });
+        }
+
+        private void dispatch() {
+
+            // Threads of the file channel and of the throttle do not read
+            // themselves, the next read is started by the servlet container.
+            try {this.asyncContext.start(this::resume);
+            } catch (IllegalStateException exception) {
+                this.abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exception);
+            }
+        }
+
+        private void write()
+                throws IOException {
+            final ByteBuffer buffer = this.packageReceiver.next();
+            this.writing = Objects.nonNull(buffer);
+            if (!this.writing)
+                return;
+            this.position = this.packageReceiver.offset;
+            this.channel.write(buffer, this.position, buffer, this);
+        }
+
+        @Override
+        public void completed(final Integer result, final ByteBuffer buffer) {
+            try {synchronized (this) {
+                    if (this.done)
+                        return;
+                    this.position += result;
+                    if (buffer.hasRemaining()) {
+                        this.channel.write(buffer, this.position, buffer, this);
+                        return;
+                    }
+                    this.write();
+                    if (this.writing)
+                        return;
+                }
+            } catch (IOException | RuntimeException exception) {
+                this.abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, exception);
+                return;
+            }
+            this.dispatch();
+        }
+
+        @Override
+        public void failed(final Throwable throwable, final ByteBuffer buffer) {
+            this.abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, throwable);
+        }
+
+        @Override
+        public void onAllDataRead() {
+            synchronized (this) {
+                this.finished = true;
+            }
+            this.resume();
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            this.abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, throwable);
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) {
+            this.abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null);
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            this.abort(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, event.getThrowable());
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+        }
+
+        private synchronized boolean terminate() {
+            if (this.done)
+                return false;
+            this.done = true;
+            try {this.channel.close();
+            } catch (IOException ignored) {
+            }
+            return true;
+        }
+
+        private void finish() {
+            if (!this.terminate())
+                return;
+            final boolean complete;
+            try {complete = this.packageReceiver.complete();
+            } catch (PackageChecksumException exception) {
+                this.packageReceiver.abort();
+                this.respond(SC_PACKAGE_CHECKSUM_MISMATCH);
+                RemoteDeploymentImpl.this.metrics.packagesCorrupted.increment();
+                return;
+            } catch (IOException exception) {
+                this.packageReceiver.abort();
+                this.respond(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                RemoteDeploymentImpl.this.metrics.packagesFailed.increment();
+                RemoteDeploymentImpl.this.context.log(String.format("%s: Receiving of a package failed",
+                        RemoteDeploymentImpl.class.getSimpleName()), exception);
+                return;
+            }
+            this.respond(HttpServletResponse.SC_CREATED);
+            RemoteDeploymentImpl.this.metrics.receive(this.packageReceiver);
+            try {RemoteDeploymentImpl.this.acceptPackage(this.tempDirectory, this.uuid, this.packageReceiver, complete);
+            } catch (IOException exception) {
+                RemoteDeploymentImpl.this.context.log(String.format("%s: Receiving of a package failed",
+                        RemoteDeploymentImpl.class.getSimpleName()), exception);
+            }
+        }
+
+        private void abort(final int status, final Throwable throwable) {
+            if (!this.terminate())
+                return;
+            this.packageReceiver.abort();
+            this.respond(status);
+            RemoteDeploymentImpl.this.metrics.packagesFailed.increment();
+            if (Objects.nonNull(throwable))
+                RemoteDeploymentImpl.this.context.log(String.format("%s: Receiving of a package failed",
+                        RemoteDeploymentImpl.class.getSimpleName()), throwable);
+        }
+
+        private void respond(final int status) {
+            try {final HttpServletResponse response = (HttpServletResponse)this.asyncContext.getResponse();
+                if (!response.isCommitted()) {
+                    response.setStatus(status);
+                    response.flushBuffer();
+                }
+            } catch (IOException | IllegalStateException ignored) {
+            }
+            try {this.asyncContext.complete();
+            } catch (IllegalStateException ignored) {
+            }
+        }
+    }
+
+    private File completePackage(final File tempDirectory, final String uuid, final PackageMeta packageMeta,
+            final PackageState packageState)
+            throws IOException, ServletException {
+
+        final File packageFile = new File(tempDirectory, uuid + ".temp");
+        final PackageDigest packageDigest = packageState.digest;
+
+        // With a range, the package file is already complete and is
+        // only renamed. Otherwise, the chunks are merged into one file.
+        // The checksum is calculated during the merge or was already
+        // calculated while the chunks were written.
+        final File packagePackFileFinal = new File(tempDirectory, uuid + ".work");
+        String checkSum;
+        if (Objects.nonNull(packageDigest)) {
+            final PackageChecksumEvent event = new PackageChecksumEvent();
+            event.begin();
+            try (final FileChannel channel = FileChannel.open(packageFile.toPath(), StandardOpenOption.READ)) {
+                checkSum = packageDigest.complete(channel);
+                event.size = channel.size();
+            } catch (Exception exception) {
+                throw new ServletException(exception);
+            }
+            event.uuid = packageMeta.uuid;
+            event.commit();
+            RemoteDeploymentImpl.movePackage(packageFile, packagePackFileFinal);
+        } else try (FileOutputStream packagePackFileFinalOutputStream = new FileOutputStream(packagePackFileFinal)) {
+            final MessageDigest messageDigest;
+            try {messageDigest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException exception) {
+                throw new ServletException(exception);
+            }
+            final PackageMergeEvent event = new PackageMergeEvent();
+            event.begin();
+            for (int loop = 1; loop <= packageMeta.count; loop++) {
+                final File packagePackSourceFile = new File(tempDirectory, uuid + "_" + loop + ".work");
+                try (FileInputStream packagePackSourceFileInputStream = new FileInputStream(packagePackSourceFile)) {
+                    final byte[] bytes = new byte[0xFFFF];
+                    for (int size; (size = packagePackSourceFileInputStream.read(bytes)) >= 0; ) {
+                        packagePackFileFinalOutputStream.write(bytes, 0, size);
+                        messageDigest.update(bytes, 0, size);
+                        event.size += size;
+                    }
+                }
+            }
+            checkSum = RemoteDeploymentImpl.encodeHex(messageDigest.digest());
+            event.uuid = packageMeta.uuid;
+            event.count = packageMeta.count;
+            event.commit();
+        } finally {
+            // Clean up the temporary chunks after merging.
+            for (int loop = 1; loop <= packageMeta.count; loop++)
+                new File(tempDirectory, uuid + "_" + loop + ".work").delete();
+        }
+
+        // With a delta, the received file contains the instructions to
+        // rebuild the file from the current destination file. The checksum
+        // of the delta is checked first, the file is then rebuilt and the
+        // checksum is calculated while the file is written.
+        if (Objects.nonNull(packageMeta.deltaCheckSum)) {
+            if (!checkSum.equalsIgnoreCase(packageMeta.deltaCheckSum)) {
+                packagePackFileFinal.delete();
+                throw new ServletException(String.format("%s: Invalid checksum of delta for %s", RemoteDeploymentImpl.class.getSimpleName(), this.destination));
+            }
+            final File packageDeltaFile = new File(tempDirectory, uuid + ".delta");
+            RemoteDeploymentImpl.movePackage(packagePackFileFinal, packageDeltaFile);
+            final PackageRebuildEvent event = new PackageRebuildEvent();
+            event.begin();
+            try {checkSum = this.rebuildPackage(packageDeltaFile, packagePackFileFinal);
+                event.uuid = packageMeta.uuid;
+                event.delta = packageDeltaFile.length();
+                event.size = packagePackFileFinal.length();
+                event.commit();
+            } finally {
+                packageDeltaFile.delete();
+            }
+        }
+
+        // Checksum of the final file must match the checksum from the
+        // Package header. Otherwise, it will cause a servlet
+        // exception, which is ok because the response was closed.
+        if (!checkSum.equalsIgnoreCase(packageMeta.checkSum)) {
+            packagePackFileFinal.delete();
+            throw new ServletException(String.format("%s: Invalid checksum of %s", RemoteDeploymentImpl.class.getSimpleName(), this.destination));
+        }
+
+        return packagePackFileFinal;
+    }
+
+    private String rebuildPackage(final File packageDeltaFile, final File packagePackFileFinal)
+            throws IOException, ServletException {
+
+        final MessageDigest messageDigest;
+        try {messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new ServletException(exception);
+        }
+
+        // The delta is a sequence of instructions: C + offset (long) + length
+        // (int) copies a region of the destination file, L + length (int) +
+        // data adds data contained in the delta. The destination file is only
+        // opened if the delta contains copies.
+        try (final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(packageDeltaFile)));
+                final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(packagePackFileFinal));
+                final FileChannel channel = this.destination.isFile() ? FileChannel.open(this.destination.toPath(), StandardOpenOption.READ) : null) {
+            final byte[] bytes = new byte[0xFFFF];
+            for (int instruction; (instruction = inputStream.read()) >= 0;) {
+                if (instruction == DELTA_COPY) {
+                    final long offset = inputStream.readLong();
+                    final int length = inputStream.readInt();
+                    if (Objects.isNull(channel))
+                        throw new IOException("Missing destination for delta");
+                    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    for (long position = offset; position < offset +length;) {
+                        buffer.clear().limit((int)Math.min(bytes.length, offset +length -position));
+                        final int size = channel.read(buffer, position);
+                        if (size < 0)
+                            throw new IOException("Invalid delta");
+                        outputStream.write(bytes, 0, size);
+                        messageDigest.update(bytes, 0, size);
+                        position += size;
+                    }
+                } else if (instruction == DELTA_LITERAL) {
+                    for (int length = inputStream.readInt(); length > 0;) {
+                        final int size = inputStream.read(bytes, 0, Math.min(bytes.length, length));
+                        if (size < 0)
+                            throw new IOException("Invalid delta");
+                        outputStream.write(bytes, 0, size);
+                        messageDigest.update(bytes, 0, size);
+                        length -= size;
+                    }
+                } else throw new IOException("Invalid delta");
+            }
+        } catch (IOException exception) {
+            packagePackFileFinal.delete();
+            throw exception;
+        }
+        return RemoteDeploymentImpl.encodeHex(messageDigest.digest());
+    }
+
+    private static int calcRollingCheckSum(final byte[] bytes, final int length) {
+        int a = 0;
+        int b = 0;
+        for (int index = 0; index < length; index++) {
+            a += bytes[index] & 0xFF;
+            b += (length -index) *(bytes[index] & 0xFF);
+        }
+        return (a & 0xFFFF) | (b << 16);
+    }
+
+    private void sendSignatures(final HttpServletResponse response)
+            throws IOException, ServletException {
+
+        final MessageDigest messageDigest;
+        try {messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new ServletException(exception);
+        }
+
+        // The destination file is divided into blocks of the same size, the
+        // size depends on the size of the file. For each complete block, the
+        // rolling checksum and the MD5 is sent as one line, e.g.
+        // 1A2B3C4D/<MD5>. The destination file is not replaced meanwhile, but
+        // only the calculation is locked. The lines are sent afterwards, so a
+        // slow client does not delay the activation of other uploads.
+        final int blockSize;
+        final StringBuilder signatures = new StringBuilder();
+        synchronized (this.activation) {
+            final long length = this.destination.isFile() ? this.destination.length() : 0;
+            blockSize = (int)Math.max(0x800, Math.min(0x20000, (long)Math.sqrt(length) & ~0x3FF));
+            try (final InputStream inputStream = length > 0 ? new BufferedInputStream(new FileInputStream(this.destination)) : InputStream.nullInputStream()) {
+                final byte[] bytes = new byte[blockSize];
+                while (inputStream.readNBytes(bytes, 0, blockSize) == blockSize) {
+                    messageDigest.update(bytes, 0, blockSize);
+                    signatures.append(String.format("%08X/%s\n", RemoteDeploymentImpl.calcRollingCheckSum(bytes, blockSize),
+                            RemoteDeploymentImpl.encodeHex(messageDigest.digest())));
+                }
+            }
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setHeader(HTTP_HEADER_PACKAGE_DELTA, String.valueOf(blockSize));
+        response.setContentType("text/plain");
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.US_ASCII))) {
+            writer.append(signatures);
+        }
+    }
+
+    private void activatePackage(final File packagePackFileFinal)
+            throws IOException, ServletException {
+
+        synchronized (this.activation) {
+
+            // If everything fits, the destination file is replaced.
+            RemoteDeploymentImpl.movePackage(packagePackFileFinal, this.destination);
+
+            // Execution of the command line command for the deployment. Only
+            // the command is measured, without waiting for the lock and
+            // without replacing the destination file.
+            if (Objects.nonNull(this.command)) {
+                final CommandEvent event = new CommandEvent();
+                event.begin();
+                event.command = this.command;
+                final long timing = System.nanoTime();
+                try {Process process = Runtime.getRuntime().exec(this.command);
+                    String error = new String(process.getErrorStream().readAllBytes());
+                    if (!error.isBlank())
+                        throw new ServletException(String.format("%s: Error during script execution%n%s", RemoteDeploymentImpl.class.getSimpleName(), error.trim()));
+                    event.successful = true;
+                } finally {
+                    this.metrics.commandTime.record(System.nanoTime() -timing);
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    private static void receivePackage(final InputStream inputStream, final PackageReceiver packageReceiver,
+            final PackageThrottle throttle)
+            throws IOException {
+        try (final FileChannel channel = FileChannel.open(packageReceiver.file.toPath(), StandardOpenOption.WRITE)) {
+            final byte[] bytes = new byte[0xFFFF];
+            for (int size; (size = inputStream.read(bytes)) >= 0;) {
+                packageReceiver.receive(bytes, size);
+                for (ByteBuffer buffer; Objects.nonNull(buffer = packageReceiver.next());)
+                    for (long position = packageReceiver.offset; buffer.hasRemaining();)
+                        position += channel.write(buffer, position);
+                final long delay = Objects.nonNull(throttle) ? throttle.take(size) : 0;
+                if (delay > 0)
+                    try {Thread.sleep(delay);
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+            }
+        }
+    }
+
+    private void receivePackage(final HttpServletRequest request, final PackageReceiver packageReceiver,
+            final File tempDirectory, final String uuid)
+            throws IOException {
+
+        final AsynchronousFileChannel channel;
+        try {channel = AsynchronousFileChannel.open(packageReceiver.file.toPath(), StandardOpenOption.WRITE);
+        } catch (IOException exception) {
+            packageReceiver.abort();
+            throw exception;
+        }
+
+        // The timeout of the asynchronous request corresponds to the
+        // expiration, so that an aborted transfer releases the chunk again.
+        // If the asynchronous request cannot be started, the chunk is
+        // released immediately, whatever the reason.
+        try {final AsyncContext asyncContext = request.startAsync();
+            asyncContext.setTimeout(Math.max(this.expiration, 0));
+            final PackageReadListener packageReadListener =
+                    new PackageReadListener(asyncContext, channel, packageReceiver, tempDirectory, uuid);
+            asyncContext.addListener(packageReadListener);
+            request.getInputStream().setReadListener(packageReadListener);
+        } catch (Throwable throwable) {
+            try {channel.close();
+            } catch (IOException ignored) {
+            }
+            packageReceiver.abort();
+            this.metrics.packagesFailed.increment();
+            throw throwable;
+        }
+    }
+
+    private PackageState receiveCachedPackages(final HttpServletRequest request, final PackageMeta packageMeta,
+            final File tempDirectory, final String uuid)
+            throws IOException {
+
+        // The body contains one line per chunk with number, range and SHA-256:
+        // <number>/<first byte>-<last byte>/<file size>/<SHA-256>
+        // Without cache, the lines are ignored. The state of the upload is
+        // returned, even if the upload was completed and removed meanwhile.
+        PackageState packageState = this.packageStates.get(uuid);
+        final String packageLinePattern = "^\\s*(\\d{1,9})/(\\d{1,18})-(\\d{1,18})/(\\d{1,18})/([0-9A-Fa-f]{64})\\s*$";
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.US_ASCII));
+        int count = 0;
+        for (String line; Objects.nonNull(line = reader.readLine()) && count++ < packageMeta.count;) {
+            if (Objects.isNull(this.cache)
+                    || !line.matches(packageLinePattern))
+                continue;
+            final PackageMeta cacheMeta = new PackageMeta();
+            cacheMeta.uuid = packageMeta.uuid;
+            cacheMeta.secret = packageMeta.secret;
+            cacheMeta.count = packageMeta.count;
+            cacheMeta.checkSum = packageMeta.checkSum;
+            cacheMeta.deltaCheckSum = packageMeta.deltaCheckSum;
+            cacheMeta.number = Integer.valueOf(line.replaceAll(packageLinePattern, "$1"));
+            cacheMeta.last = cacheMeta.number;
+            cacheMeta.offset = Long.valueOf(line.replaceAll(packageLinePattern, "$2"));
+            cacheMeta.length = Long.valueOf(line.replaceAll(packageLinePattern, "$3")) -cacheMeta.offset +1;
+            cacheMeta.size = Long.valueOf(line.replaceAll(packageLinePattern, "$4"));
+            cacheMeta.packageHash = line.replaceAll(packageLinePattern, "$5").toUpperCase();
+            if (cacheMeta.length <= 0
+                    || cacheMeta.offset +cacheMeta.length > cacheMeta.size)
+                continue;
+            try (final InputStream inputStream = this.cache.open(cacheMeta.packageHash)) {
+                if (Objects.nonNull(inputStream))
+                    packageState = this.receiveCachedPackage(inputStream, cacheMeta, tempDirectory, uuid);
+            }
+        }
+        return packageState;
+    }
+
+    private PackageState receiveCachedPackage(final InputStream inputStream, final PackageMeta packageMeta,
+            final File tempDirectory, final String uuid)
+            throws IOException {
+
+        // A chunk from the cache is received in the same way as a chunk of a
+        // PUT request. If this fails, e.g. if the SHA-256 does not match, the
+        // chunk is released again and must be sent. If the state has just
+        // expired, a new one is created.
+        PackageState packageState;
+        boolean acquired;
+        do {packageState = this.packageStates.computeIfAbsent(uuid, key ->
+                    new PackageState(packageMeta.count, packageMeta.size));
+            if (packageMeta.number < 1
+                    || packageMeta.number > packageState.count
+                    || Objects.isNull(packageState.digest)
+                    || packageMeta.size != packageState.size)
+                return packageState;
+            acquired = packageState.acquire(packageMeta.number, packageMeta.last);
+        } while (!acquired && packageState.isExpired());
+        if (!acquired)
+            return packageState;
+        final PackageReceiver packageReceiver;
+        try {packageReceiver = new PackageReceiver(new File(tempDirectory, uuid + ".temp"), packageMeta, packageState,
+                    true, Objects.nonNull(this.relay));
+        } catch (IOException exception) {
+            packageState.abort(packageMeta.number, packageMeta.last);
+            throw exception;
+        }
+        final boolean complete;
+        try {RemoteDeploymentImpl.receivePackage(inputStream, packageReceiver, null);
+            complete = packageReceiver.complete();
+        } catch (IOException exception) {
+            packageReceiver.abort();
+            return packageState;
+        }
+        this.metrics.packagesCached.increment();
+        this.acceptPackage(tempDirectory, uuid, packageReceiver, complete);
+        return packageState;
+    }
+
+    private static void sendPackagesReceived(final HttpServletResponse response, final PackageState packageState)
+            throws IOException {
+
+        // An expired state is answered like an unknown upload, its files have
+        // already been deleted or are just being deleted.
+        final StringBuilder packageReceived = new StringBuilder();
+        for (int loop = 1; Objects.nonNull(packageState) && !packageState.isExpired() && loop <= packageState.count; loop++) {
+            if (!packageState.isReceived(loop))
+                continue;
+            final int first = loop;
+            while (loop < packageState.count
+                    && packageState.isReceived(loop +1))
+                loop++;
+            if (packageReceived.length() > 0)
+                packageReceived.append(",");
+            packageReceived.append(first < loop ? first + "-" + loop : String.valueOf(first));
+        }
+        response.setHeader(HTTP_HEADER_PACKAGE_RECEIVED, packageReceived.toString());
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.flushBuffer();
+    }
+
+    private void acceptPackage(final File tempDirectory, final String uuid, final PackageReceiver packageReceiver,
+            final boolean complete)
+            throws IOException {
+
+        final PackageMeta packageMeta = packageReceiver.packageMeta;
+        final PackageState packageState = packageReceiver.packageState;
+
+        // Chunks that arrived before the position of the checksum are
+        // included now, if the gap before them has been closed. The relay of
+        // the chunk is already registered, if this fails, it is completed
+        // exceptionally, so that the completion of the upload does not wait
+        // for it forever.
+        final File packageFile = new File(tempDirectory, uuid + ".temp");
+        try {if (Objects.nonNull(packageState.digest))
+                try (final FileChannel channel = FileChannel.open(packageFile.toPath(), StandardOpenOption.READ)) {
+                    packageState.digest.update(channel);
+                }
+
+            // The chunk is added to the cache before the upload is completed,
+            // because the package file is moved then. The cache is optional,
+            // so errors are ignored and the chunk is simply not cached.
+            if (Objects.nonNull(packageReceiver.hash))
+                try {this.cache.put(packageReceiver.hash, packageFile, packageMeta.offset, packageMeta.length);
+                } catch (IOException ignored) {
+                }
+        } catch (IOException | RuntimeException exception) {
+            if (Objects.nonNull(packageReceiver.relay))
+                packageReceiver.relay.completeExceptionally(exception);
+            throw exception;
+        }
+
+        if (Objects.nonNull(packageReceiver.relay))
+            try {this.relayPackage(tempDirectory, uuid, packageReceiver);
+            } catch (RuntimeException exception) {
+                packageReceiver.relay.completeExceptionally(exception);
+            }
+
+        // The filter does not know at that moment how many chunks have
+        // already been received and whether the sending is complete. Assuming
+        // that the data transfer can be asynchronous and the order of the
+        // chunks can be unordered, the counter of the upload state determines
+        // exactly one request, which has received the last chunk and completes
+        // the upload. The completed state remains until it expires, so that a
+        // chunk sent again is answered with status 423 and does not start a
+        // new upload.
+        if (!complete)
+            return;
+        if (this.expiration <= 0)
+            this.packageStates.remove(uuid);
+
+        // Merging and checksum only concern the files of this upload and need
+        // no lock. Only the activation with the destination file and the
+        // command is shared by all uploads of the instance, so only this part
+        // is synchronized. Receiving chunks is never blocked. The completion
+        // is passed to the executor and the request thread returns to the
+        // servlet container. Errors can no longer be answered and are
+        // therefore logged. With peers, the completion starts only when all
+        // chunks have been forwarded or their forwarding has failed, because
+        // the package file is moved then.
+        final Runnable completion = () -> {
+            try {final long timing = System.nanoTime();
+                final File packagePackFileFinal = this.completePackage(tempDirectory, uuid, packageMeta, packageState);
+                this.metrics.completionTime.record(System.nanoTime() -timing);
+                this.activatePackage(packagePackFileFinal);
+                this.metrics.uploadsCompleted.increment();
+            } catch (Exception exception) {
+                this.metrics.uploadsFailed.increment();
+                this.context.log(String.format("%s: Deployment of %s failed",
+                        RemoteDeploymentImpl.class.getSimpleName(), this.destination), exception);
+            }
+        };
+        if (packageState.relays.isEmpty())
+            this.executor.execute(completion);
+        else CompletableFuture.allOf(packageState.relays.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((result, throwable) -> this.executor.execute(completion));
+    }
+
+    private static InputStream openPackage(final File file, final long offset, final long length)
+            throws IOException {
+
+        // Stream of the region of a chunk in a file, which is read directly
+        // from the file channel, so the chunk is not kept in memory.
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        final long limit = offset +length;
+        return new InputStream() {
+
+            private long position = offset;
+
+            @Override
+            public int read()
+                    throws IOException {
+                final byte[] bytes = new byte[1];
+                return this.read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int start, final int count)
+                    throws IOException {
+                if (this.position >= limit)
+                    return -1;
+                final int size = channel.read(ByteBuffer.wrap(bytes, start, (int)Math.min(count, limit -this.position)), this.position);
+                if (size > 0)
+                    this.position += size;
+                return size;
+            }
+
+            @Override
+            public void close()
+                    throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private void relayPackage(final File tempDirectory, final String uuid, final PackageReceiver packageReceiver) {
+
+        // The chunk is forwarded uncompressed to all peers at the same time,
+        // with a range from the shared package file, otherwise from the file
+        // of the chunk. The Package header remains the same, so the peers
+        // assemble the same upload. The registered relay of the chunk is
+        // completed when all peers have answered, exceptionally if a peer has
+        // failed, e.g. due to a timeout.
+        final PackageMeta packageMeta = packageReceiver.packageMeta;
+        final boolean range = Objects.nonNull(packageReceiver.packageState.digest);
+        final File packageFile = range ? new File(tempDirectory, uuid + ".temp")
+                : new File(tempDirectory, uuid + "_" + packageMeta.number + ".work");
+        final long offset = range ? packageMeta.offset : 0;
+        final long length = range ? packageMeta.length : packageFile.length();
+        final CompletableFuture<?>[] relays = new CompletableFuture<?>[this.relay.length];
+        for (int index = 0; index < this.relay.length; index++) {
+            final HttpRequest.Builder requestBuilder = HttpRequest.newBuilder(this.relay[index])
+                    .timeout(Duration.ofMillis(this.expiration > 0 ? this.expiration : RELAY_TIMEOUT));
+            requestBuilder.header(HTTP_HEADER_PACKAGE, String.format("%s/%s/%s/%d/%s", packageMeta.uuid, packageMeta.secret,
+                    packageMeta.last != packageMeta.number ? packageMeta.number + "-" + packageMeta.last : packageMeta.number,
+                    packageMeta.count, packageMeta.checkSum));
+            if (range)
+                requestBuilder.header(HTTP_HEADER_PACKAGE_RANGE, String.format("%d-%d/%d",
+                        packageMeta.offset, packageMeta.offset +packageMeta.length -1, packageMeta.size));
+            if (Objects.nonNull(packageMeta.packageCheckSum))
+                requestBuilder.header(HTTP_HEADER_PACKAGE_CHECKSUM, packageMeta.packageCheckSum);
+            if (Objects.nonNull(packageMeta.deltaCheckSum))
+                requestBuilder.header(HTTP_HEADER_PACKAGE_DELTA, packageMeta.deltaCheckSum);
+            requestBuilder.PUT(length <= 0 ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> {
+                        try {return RemoteDeploymentImpl.openPackage(packageFile, offset, length);
+                        } catch (IOException exception) {
+                            throw new UncheckedIOException(exception);
+                        }
+                    }), length));
+            relays[index] = this.relayPackage(requestBuilder.build(), packageMeta, RELAY_RETRIES);
+        }
+        CompletableFuture.allOf(relays)
+                .whenComplete((result, throwable) -> {
+                    if (Objects.nonNull(throwable))
+                        packageReceiver.relay.completeExceptionally(throwable);
+                    else packageReceiver.relay.complete(null);
+                });
+    }
+
+    private CompletableFuture<Void> relayPackage(final HttpRequest request, final PackageMeta packageMeta, final int retries) {
+
+        // A chunk is forwarded again after an I/O error, a timeout, a server
+        // error, a rejected checksum or if the peer is just receiving the
+        // chunk (409). Status 423 means that the peer already has the chunk.
+        // All other responses are final and are logged as errors, if the peer
+        // cannot be reached, the relay fails.
+        return this.relayClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, throwable) -> {
+                    if (retries > 0
+                            && (Objects.nonNull(throwable)
+                                    || response.statusCode() >= 500
+                                    || response.statusCode() == SC_PACKAGE_CHECKSUM_MISMATCH
+                                    || response.statusCode() == HttpServletResponse.SC_CONFLICT))
+                        return this.relayPackage(request, packageMeta, retries -1);
+                    if (Objects.nonNull(throwable)) {
+                        this.context.log(String.format("%s: Relay of package %d of %d to %s failed",
+                                RemoteDeploymentImpl.class.getSimpleName(), packageMeta.number, packageMeta.count, request.uri()), throwable);
+                        return CompletableFuture.<Void>failedFuture(throwable);
+                    }
+                    if (response.statusCode() != HttpServletResponse.SC_CREATED
+                            && response.statusCode() != SC_PACKAGE_LOCKED)
+                        this.context.log(String.format("%s: Relay of package %d of %d to %s failed (status %d)",
+                                RemoteDeploymentImpl.class.getSimpleName(), packageMeta.number, packageMeta.count, request.uri(), response.statusCode()));
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(Function.identity());
+    }
+
     void service(final HttpServletRequest request, final HttpServletResponse response)
             throws IOException, ServletException {
 
-        // Only PUT requests and matching Secret headers are accepted,
-        // otherwise the filter behaves as if it does not exist. This is the
-        // security concept. The filter reacts only after authorization.
+        // Only PUT, HEAD, GET and POST requests and matching Secret headers
+        // are accepted, otherwise the filter behaves as if it does not exist.
+        // This is the security concept. The filter reacts only after
+        // authorization.
         if (Objects.isNull(request.getMethod())
-                || !("PUT").equalsIgnoreCase(request.getMethod()))
+                || (!("PUT").equalsIgnoreCase(request.getMethod())
+                        && !("HEAD").equalsIgnoreCase(request.getMethod())
+                        && !("GET").equalsIgnoreCase(request.getMethod())
+                        && !("POST").equalsIgnoreCase(request.getMethod())))
             throw new UnsupportedRequestException();
 
         final PackageMeta packageMeta = RemoteDeploymentImpl.detectPackageMeta(request);
@@ -178,112 +2206,164 @@ class RemoteDeploymentImpl {
             throw new UnsupportedRequestException();
 
         // The destination file can be sent chunks. In any case, the file is
-        // created as a temporary file with a unique name and an index. The
-        // unique name uses a UUID of the filter instance, so multiple filter
-        // instances can use the same temp directory. If a file or a chunks
-        // already exists, the request is responded with status 423 (locked).
-        final String uuid = RemoteDeploymentImpl.UUID + "---" + packageMeta.uuid;
-        final File tempDirectory = new File(System.getProperty("java.io.tmpdir"));
+        // created as a temporary file with a unique name and an index. Each
+        // filter instance uses its own staging directory, so multiple filter
+        // instances can use the same parent directory. The state of the upload
+        // is kept in memory. If a chunk has already been received, the
+        // request is responded with status 423 (locked), if it is just being
+        // received, with status 409 (conflict).
+        final String uuid = packageMeta.uuid;
+        final File tempDirectory = this.staging;
         final File packageTempFile = new File(tempDirectory, uuid + "_" + packageMeta.number + ".temp");
-        final File packageWorkFile = new File(tempDirectory, uuid + "_" + packageMeta.number + ".work");
-        if (packageTempFile.exists()
-                || packageWorkFile.exists()) {
-            response.setStatus(423);
-            response.flushBuffer();
+
+        // HEAD requests query the status of an upload. The response contains
+        // the numbers of the chunks already received, e.g. 1-17,19,21-30, so
+        // an interrupted upload can be resumed with the missing chunks.
+        if (("HEAD").equalsIgnoreCase(request.getMethod())) {
+            RemoteDeploymentImpl.sendPackagesReceived(response, this.packageStates.get(uuid));
             return;
         }
 
-        try {
+        // POST requests announce the chunks of an upload with their SHA-256.
+        // Chunks contained in the cache are taken from there, so they do not
+        // have to be sent. The response is the same as for HEAD requests.
+        if (("POST").equalsIgnoreCase(request.getMethod())) {
+            RemoteDeploymentImpl.sendPackagesReceived(response,
+                    this.receiveCachedPackages(request, packageMeta, tempDirectory, uuid));
+            return;
+        }
 
-            // Two file extensions are used for saving: temp + work.
-            // Temp means the data is still being loaded and the file is not
-            // yet complete. Only with the successful end, the file extension
-            // work is set. Thus, with asynchronous use, other threads can
-            // identify only completed uploads.
+        // GET requests query the block signatures of the destination file, so
+        // that the sender can calculate a delta and sends only the changed
+        // data of the file.
+        if (("GET").equalsIgnoreCase(request.getMethod())) {
+            this.sendSignatures(response);
+            return;
+        }
 
-            // In any case, the request is answered here as successful with
-            // status 201, the rest continues to happen in the background.
-            // There is no helpful response, since it is not known how long the
-            // process takes and what shell commands may do.
-            Files.copy(request.getInputStream(), packageTempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            final File packagePackFile = new File(tempDirectory, uuid + "_" + packageMeta.number + ".work");
-            packageTempFile.renameTo(packagePackFile);
-            request.getInputStream().close();
-            response.setStatus(HttpServletResponse.SC_CREATED);
+        // Chunks can be sent compressed with Content-Encoding deflate, other
+        // encodings are not supported.
+        if (Objects.nonNull(packageMeta.encoding)
+                && !packageMeta.encoding.matches("^(deflate|identity)$")) {
+            response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
             response.flushBuffer();
+            return;
+        }
 
-            // The filter does not know at that moment how many chunks the
-            // destination file consists of, how many parts have already been
-            // received and whether the sending is complete. Assuming that the
-            // data transfer can be asynchronous and the order of the chunks
-            // can be unordered, the state of the sending  is analyzed
-            // synchronously so that multiple instances do not do the same.
-            synchronized (this) {
+        // Chunks that do not match the upload, e.g. with a different total
+        // size, are answered with status 400 before the file is opened. If
+        // the state of the upload expires meanwhile, it can no longer be
+        // acquired and a new state is created.
+        PackageState packageState;
+        boolean acquired;
+        do {packageState = this.packageStates.computeIfAbsent(uuid, key ->
+                    new PackageState(packageMeta.count, packageMeta.offset >= 0 ? packageMeta.size : -1));
+            if (packageMeta.number < 1
+                    || packageMeta.last > packageState.count
+                    || (packageMeta.offset >= 0) != Objects.nonNull(packageState.digest)
+                    || (packageMeta.offset >= 0 && packageMeta.size != packageState.size)
+                    || (packageMeta.offset < 0 && packageMeta.last != packageMeta.number)) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                response.flushBuffer();
+                return;
+            }
+            acquired = packageState.acquire(packageMeta.number, packageMeta.last);
+        } while (!acquired && packageState.isExpired());
 
-                // Chunks are counted, if one is missing the wait continues.
-                for (int loop = 1; loop <= packageMeta.count; loop++)
-                    if (!new File(tempDirectory, uuid + "_" + loop + ".work").exists())
-                        return;
+        // Chunks that have all been received are answered with status 423
+        // and can be skipped by the sender. If one of them is still being
+        // received by another request, whose result is still open, the
+        // request is answered with status 409 and can be repeated later.
+        if (!acquired) {
+            this.metrics.packagesLocked.increment();
+            if (packageState.isReceived(packageMeta.number, packageMeta.last))
+                response.setStatus(SC_PACKAGE_LOCKED);
+            else {
+                response.setStatus(HttpServletResponse.SC_CONFLICT);
+                response.setHeader(HTTP_HEADER_RETRY_AFTER, "1");
+            }
+            response.flushBuffer();
+            return;
+        }
 
-                // The chunks are merged into one file.
-                final File packagePackFileFinal = new File(tempDirectory, uuid + ".work");
-                try (FileOutputStream packagePackFileFinalOutputStream = new FileOutputStream(packagePackFileFinal)) {
-                    for (int loop = 1; loop <= packageMeta.count; loop++) {
-                        final File packagePackSourceFile = new File(tempDirectory, uuid + "_" + loop + ".work");
-                        try (FileInputStream packagePackSourceFileInputStream = new FileInputStream(packagePackSourceFile)) {
-                            final byte[] bytes = new byte[0xFFFF];
-                            for (int size; (size = packagePackSourceFileInputStream.read(bytes)) >= 0; )
-                                packagePackFileFinalOutputStream.write(bytes, 0, size);
-                        }
-                    }
-                } finally {
-                    // Clean up the temporary chunks after merging.
-                    for (int loop = 1; loop <= packageMeta.count; loop++)
-                        new File(tempDirectory, uuid + "_" + loop + ".work").delete();
-                }
+        // With a range, the data of the chunk is written directly into the
+        // shared package file, otherwise into a separate file per chunk.
+        final File packageFile = Objects.nonNull(packageState.digest)
+                ? new File(tempDirectory, uuid + ".temp") : packageTempFile;
+        final PackageReceiver packageReceiver;
+        try {packageReceiver = new PackageReceiver(packageFile, packageMeta, packageState,
+                    Objects.nonNull(this.cache) && Objects.nonNull(packageState.digest) && packageMeta.last == packageMeta.number,
+                    Objects.nonNull(this.relay));
+        } catch (IOException exception) {
+            packageTempFile.delete();
+            packageState.abort(packageMeta.number, packageMeta.last);
+            throw exception;
+        }
 
-                // Checksum of the final file must match the checksum from the
-                // Package header. Otherwise, it will cause a servlet
-                // exception, which is ok because the response was closed.
-                final String checkSum;
-                try {checkSum = RemoteDeploymentImpl.calcFileCheckSum(packagePackFileFinal);
-                } catch (Exception exception) {
-                    throw new ServletException(exception);
-                }
-                if (!checkSum.equalsIgnoreCase(packageMeta.checkSum))
-                    throw new ServletException(String.format("%s: Invalid checksum of %s", RemoteDeploymentImpl.class.getSimpleName(), this.destination));
-                // If everything fits, the destination file is replaced.
-                Files.move(packagePackFileFinal.toPath(), this.destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
-
-                // Execution of the command line command for the deployment.
-                if (Objects.nonNull(this.command)) {
-                    Process process = Runtime.getRuntime().exec(this.command);
-                    String error = new String(process.getErrorStream().readAllBytes());
-                    if (!error.isBlank())
-                        throw new ServletException(String.format("%s: Error during script execution%n%s", RemoteDeploymentImpl.class.getSimpleName(), error.trim()));
-                }
-            }
+        // In the async mode, the chunk is received with non-blocking I/O
+        // and the request thread returns to the servlet container
+        // immediately. This requires that the servlet or filter is
+        // registered with async support, otherwise blocking I/O is used.
+        if (this.async
+                && request.isAsyncSupported()) {
+            this.receivePackage(request, packageReceiver, tempDirectory, uuid);
+            return;
+        }
 
-        } finally {
+        final boolean complete;
+        try {RemoteDeploymentImpl.receivePackage(request.getInputStream(), packageReceiver, this.throttle);
+            complete = packageReceiver.complete();
+        } catch (PackageChecksumException exception) {
+            packageReceiver.abort();
+            this.metrics.packagesCorrupted.increment();
+            response.setStatus(SC_PACKAGE_CHECKSUM_MISMATCH);
+            response.flushBuffer();
+            return;
+        } catch (Throwable throwable) {
+            packageReceiver.abort();
+            this.metrics.packagesFailed.increment();
+            throw throwable;
+        }
 
-            // All expired temporary files matching the UUID of this filter
-            // instance will be cleaned.
-            if (this.expiration > 0) {
-                final long expiration = System.currentTimeMillis() -this.expiration;
-                Arrays.stream(tempDirectory.listFiles())
-                        .filter(file -> file.isFile()
-                                && file.getName().startsWith(UUID + "---")
-                                && file.lastModified() <= expiration)
-                        .forEach(File::delete);
-            }
+        // In any case, the request is answered here as successful with
+        // status 201, the rest continues to happen in the background.
+        // There is no helpful response, since it is not known how long the
+        // process takes and what shell commands may do. The chunk has
+        // already been received, so it is accepted even if the response
+        // fails, otherwise the upload and its relays would never complete.
+        try {request.getInputStream().close();
+            response.setStatus(HttpServletResponse.SC_CREATED);
+            response.flushBuffer();
+        } finally {
+            this.metrics.receive(packageReceiver);
+            this.acceptPackage(tempDirectory, uuid, packageReceiver, complete);
         }
     }
 
     void destroy() {
-        final File tempDirectory = new File(System.getProperty("java.io.tmpdir"));
-        Arrays.stream(tempDirectory.listFiles())
-                .filter(file -> file.isFile()
-                        && file.getName().startsWith(UUID + "---"))
-                .forEach(File::delete);
+        if (Objects.nonNull(this.janitor))
+            this.janitor.shutdownNow();
+        if (Objects.nonNull(this.metricsName))
+            try {ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metricsName);
+            } catch (Exception ignored) {
+            }
+        if (Objects.nonNull(this.executor))
+            this.executor.shutdownNow();
+        if (Objects.nonNull(this.cache))
+            this.cache.clear();
+
+        // Only the files of this instance are deleted. The hidden directory
+        // is shared by the instances with the same destination and is only
+        // removed, if it is empty.
+        final File[] files = this.staging.listFiles();
+        if (Objects.nonNull(files))
+            Arrays.stream(files).forEach(File::delete);
+        this.staging.delete();
+        if (Objects.nonNull(this.stagingLock))
+            try {this.stagingLock.channel().close();
+            } catch (IOException ignored) {
+            }
+        new File(this.staging.getParentFile(), this.instance + ".lock").delete();
+        this.staging.getParentFile().delete();
     }
 }
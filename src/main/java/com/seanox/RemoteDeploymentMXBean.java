@@ -0,0 +1,72 @@
+/**
+ * Remote Deployment Servlet
+ * Copyright (C) 2021 Seanox Software Solutions
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of version 2 of the GNU General Public License as published by the
+ * Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package com.seanox;
+
+import java.util.Map;
+
+/**
+ * Metrics of a RemoteDeploymentFilter or RemoteDeploymentServlet via JMX.
+ * Each instance registers an MBean with the platform MBean server as
+ * <pre>
+ *   com.seanox:type=RemoteDeployment,name=&lt;filter or servlet name&gt;,instance=&lt;UUID&gt;
+ * </pre>
+ * Counters are totals since the start of the instance. Times are histograms
+ * with the keys count, mean, max, p50, p90 and p99 in microseconds. The
+ * percentiles are the upper limit of a power of two and therefore estimates.
+ */
+public interface RemoteDeploymentMXBean {
+
+    /** @return received bytes of all chunks (uncompressed) */
+    long getBytesReceived();
+
+    /** @return received chunks */
+    long getPackagesReceived();
+
+    /** @return chunks taken from the cache instead of being received */
+    long getPackagesCached();
+
+    /** @return chunks rejected with status 423 (received) or 409 (being received) */
+    long getPackagesLocked();
+
+    /** @return chunks rejected with status 422 (Package-Checksum mismatch) */
+    long getPackagesCorrupted();
+
+    /** @return chunks whose receiving failed, e.g. by an I/O error */
+    long getPackagesFailed();
+
+    /** @return uploads completed with activation and command */
+    long getUploadsCompleted();
+
+    /** @return uploads whose completion failed, e.g. by a wrong checksum */
+    long getUploadsFailed();
+
+    /** @return uploads that have not yet received all chunks */
+    int getUploadsActive();
+
+    /** @return uploads waiting for their completion by the executor */
+    int getUploadsQueued();
+
+    /** @return time from the start to the end of receiving a chunk */
+    Map<String, Long> getReceiveTime();
+
+    /** @return time of merge and checksum of an upload, calculated together */
+    Map<String, Long> getCompletionTime();
+
+    /** @return time of the command, without the activation of the file */
+    Map<String, Long> getCommandTime();
+}
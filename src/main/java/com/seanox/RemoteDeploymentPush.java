@@ -18,47 +18,203 @@
 package com.seanox;
 
 import java.io.BufferedInputStream;
-import java.io.DataInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.ProxySelector;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 
 /**
  * RemoteDeploymentPush sends files in chunks to RemoteDeploymentFilter for
  * deployment. Packetized sending of the chunks is based on the Package header
  * in the request.<br>
  * <code>Package: UUID/Secret/Number/Count/CheckSum<br>
+ * <code>Package-Range: First-Last/Size<br>
+ * <code>Package-Checksum: CheckSum of the chunk<br>
+ * <code>Package-Delta: CheckSum of the delta<br>
  * <br>
  * <h3>Usage</h3>
- * RemoteDeploymentPush <url> <file> [options...]<br>
+ * RemoteDeploymentPush <url>[,<url>...] <file> [options...]<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;-p Proxy as URL, default port 3128<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;-h Additional HTTP request headers as <header>:<value><br>
  * &nbsp;&nbsp;&nbsp;&nbsp;-s Chunk size in bytes, default 4194304 bytes)<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-b Content-defined chunk boundaries, chunk size as average<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-a Adaptive chunk size up to the given bytes, chunk size as minimum<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-c Number of chunks sent concurrently, default 1<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-r Resume an interrupted upload of the same file<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-t Number of retries per chunk, default 2<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-m Maximum time for the upload in milliseconds<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-u HTTP version h2, h2c or 1.1, default h2 with fallback to 1.1<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-n Number of HTTP connections (clients), default 1<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-e Number of threads of the HTTP client executor<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-o Timeout in milliseconds for connecting and for each request<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-l Maximum bytes per second for sending, for all destinations<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-z Compressed sending of the chunks (deflate)<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-x Sending only a delta to the deployed file<br>
+ * &nbsp;&nbsp;&nbsp;&nbsp;-k Sending only chunks that are not in the cache of the receiver<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;-v Verbose exceptions with stacktrace<br>
  * &nbsp;&nbsp;&nbsp;&nbsp;-d Verbose HTTP client output (debug mode)<br>
  * <br>
- * For the final version 1.0.0, parallel sending is still missing.
+ * Several destinations can be specified separated by commas. The checksums and
+ * the chunk layout of the file are calculated only once. The uploads to the
+ * destinations run at the same time, each reads the file itself and has its
+ * own UUID and its own limit of concurrent chunks (option -c). The output of
+ * each destination is marked with its number, at the end the result of each
+ * destination is summarized.<br>
+ * <br>
+ * With option -b, the boundaries of the chunks are determined by the content
+ * of the file with a rolling hash. The chunks are between a quarter and four
+ * times the chunk size. Inserted or removed data only changes the chunks
+ * around the change, the other chunks remain the same, which is helpful with
+ * option -k.<br>
+ * <br>
+ * With option -a, consecutive chunks are combined into one request of up to
+ * the given size. The size is adapted to the measured throughput, so that
+ * each request takes about two seconds. It starts with a single chunk as
+ * probe, grows at most by twice per request on fast connections and shrinks
+ * on slow connections or when requests are repeated after errors. The
+ * receiver handles such a request as a range of chunk numbers.<br>
+ * <br>
+ * With option -c, several chunks are sent at the same time. The order in which
+ * the chunks arrive does not matter to the receiver. Progress is still
+ * reported in the order of the chunks.<br>
+ * <br>
+ * With option -r, the UUID of the upload is kept until the upload is
+ * complete. If the upload is interrupted, the next call with the same file
+ * asks the receiver for the chunks already received and sends only the
+ * missing chunks.<br>
+ * <br>
+ * After an I/O error, a server error, a rejected checksum or status 409 (the
+ * chunk is just being received by another request), a chunk is sent again, by
+ * default two times (option -t). Between the attempts, the waiting time
+ * doubles, starting with half a second, and is randomly varied, so that
+ * several senders do not retry at the same time. Chunks that the receiver
+ * answers with status 423 have already been received, e.g. from an earlier
+ * attempt, and are skipped after a status request has confirmed this. With
+ * option -m, the upload ends with an error if it takes longer than the given
+ * time, which also limits the retries.<br>
+ * <br>
+ * With HTTP/2 (option -u h2 or h2c), all chunks sent at the same time share
+ * one multiplexed connection per HTTP client. With HTTP/1.1, each chunk sent
+ * at the same time uses its own connection. With option -n, several HTTP
+ * clients are used and the chunks are distributed among them, e.g. to use
+ * several HTTP/2 connections. With option -e, the HTTP clients use their own
+ * executor with the given number of threads instead of the default one.<br>
+ * <br>
+ * With option -l, the sending is limited to the given bytes per second (token
+ * bucket), e.g. to deploy during operation without saturating the uplink. The
+ * limit applies to all chunks and destinations together.<br>
+ * <br>
+ * With option -z, each chunk is compressed while it is sent and is sent with
+ * the header Content-Encoding: deflate. The receiver decompresses the chunk
+ * while writing it, the checksums refer to the uncompressed data.<br>
+ * <br>
+ * With option -x, the block signatures of the currently deployed file are
+ * requested from the receiver. Only a delta is sent, which contains the data
+ * that has changed and references to unchanged blocks of the deployed file.
+ * The receiver rebuilds the file from the deployed file and the delta. If the
+ * receiver does not support this, the file is sent completely.<br>
+ * <br>
+ * With option -k, the SHA-256 of all chunks is announced to the receiver
+ * before sending. Chunks that the receiver finds in its cache are taken from
+ * there and are not sent again.<br>
+ * <br>
+ * The checksums of the file and the sending of each chunk are recorded as
+ * events of the Java Flight Recorder (category Seanox / Remote Deployment)
+ * with sizes and durations, e.g. with -XX:StartFlightRecording.
  */
 public class RemoteDeploymentPush {
 
     private static final String HTTP_HEADER_PACKAGE = "Package";
+    private static final String HTTP_HEADER_PACKAGE_RANGE = "Package-Range";
+    private static final String HTTP_HEADER_PACKAGE_CHECKSUM = "Package-Checksum";
+    private static final String HTTP_HEADER_PACKAGE_RECEIVED = "Package-Received";
+    private static final String HTTP_HEADER_PACKAGE_DELTA = "Package-Delta";
+    private static final String HTTP_HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HTTP_HEADER_RETRY_AFTER = "Retry-After";
+
+    /** Instruction of a delta: copy of a region of the deployed file */
+    private static final int DELTA_COPY = 'C';
+
+    /** Instruction of a delta: data contained in the delta */
+    private static final int DELTA_LITERAL = 'L';
+
+    /** Size of the regions in which the file is mapped for the delta */
+    private static final int DELTA_WINDOW = 64 *1024 *1024;
+
+    /** Status of the receiver for a chunk with an invalid checksum */
+    private static final int SC_PACKAGE_CHECKSUM_MISMATCH = 422;
+
+    /** Random values per byte for the rolling hash of the chunk boundaries */
+    private static final long[] PACKAGE_GEAR = new Random(0x5EA0C0DEL).longs(256).toArray();
+
+    /** Duration in milliseconds aimed at for a request with option -a */
+    private static final long ADAPTIVE_TIMING = 2000;
+
+    /** Default number of retries for a chunk after an I/O error or server error */
+    private static final int PACKAGE_RETRIES = 2;
+
+    /** Waiting time in milliseconds before the first retry, doubled per retry */
+    private static final long PACKAGE_RETRY_DELAY = 500;
+
+    /** Maximum waiting time in milliseconds between two retries */
+    private static final long PACKAGE_RETRY_DELAY_MAX = 30000;
+
+    /** Status of the receiver for a chunk that has already been received */
+    private static final int SC_PACKAGE_LOCKED = 423;
+
+    /** Status of the receiver for a chunk that is just being received */
+    private static final int SC_PACKAGE_BUSY = 409;
 
     private static boolean verbose;
 
@@ -76,46 +232,175 @@ public class RemoteDeploymentPush {
         if (stackTraceElementStream.allMatch(stackTraceElement -> stackTraceElement.getClassName().startsWith(stackTraceElementFilter)))
             Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> System.exit(1));
 
-        final Deployment deployment;
-        try {deployment = Deployment.create(arguments);
+        final Deployment[] deployments;
+        try {deployments = Deployment.create(arguments);
         } catch (Exception exception) {
             throw new AbortState(exception);
         }
 
+        final Deployment deployment = deployments[0];
         RemoteDeploymentPush.verbose = deployment.verbose;
 
         System.out.printf("Seanox %s [Version 0.0.0 00000000]%n", RemoteDeploymentPush.class.getSimpleName());
         System.out.printf("Copyright (C) 0000 Seanox Software Solutions%n");
         System.out.println();
-        System.out.printf("Destination: %s%n", deployment.destination);
+        for (final Deployment target : deployments)
+            System.out.printf("Destination: %s%s%n", target.label, target.destination);
         if (Objects.nonNull(deployment.httpProxy))
             System.out.printf("Proxy:       %s%n", deployment.httpProxy.address());
         System.out.printf("File:        %s%n", deployment.file.getCanonicalPath());
         System.out.printf("Checksum:    %s%n", deployment.checkSum);
-        System.out.printf("Packages:    %sx up to %d bytes%n", deployment.packageCount, deployment.packageSize);
-        System.out.printf("UUID:        %s%n", deployment.uuid);
+        for (final Deployment target : deployments)
+            if (target.delta)
+                System.out.printf("Delta:       %s%s%n", target.label, Objects.nonNull(target.deltaFile)
+                        ? String.format("%d bytes", target.deltaFile.length()) : "not supported by the destination");
+        for (final Deployment target : deployments)
+            if (target.chunking)
+                System.out.printf("Packages:    %s%sx from %d to %d bytes (content-defined)%n", target.label, target.packageCount,
+                        target.packageSize /4, (long)target.packageSize *4);
+            else System.out.printf("Packages:    %s%sx up to %d bytes%n", target.label, target.packageCount, target.packageSize);
+        if (deployment.adaptiveSize > 0)
+            System.out.printf("Adaptive:    up to %d bytes per request%n", deployment.adaptiveSize);
+        if (deployment.concurrency > 1)
+            System.out.printf("Concurrent:  %d packages%n", deployment.concurrency);
+        for (final Deployment target : deployments)
+            System.out.printf("UUID:        %s%s%n", target.label, target.uuid);
+        if (deployment.resume)
+            System.out.println("Resume:      yes");
+        if (deployment.retries != PACKAGE_RETRIES)
+            System.out.printf("Retries:     %d per package%n", deployment.retries);
+        if (deployment.timeBudget > 0)
+            System.out.printf("Time limit:  %d ms%n", deployment.timeBudget);
+        if (Objects.nonNull(deployment.httpVersion))
+            System.out.printf("Protocol:    %s%n", deployment.httpVersion == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1");
+        if (deployment.connections > 1)
+            System.out.printf("Connections: %d%n", deployment.connections);
+        if (Objects.nonNull(deployment.executor))
+            System.out.printf("Executor:    %d threads%n", deployment.executorThreads);
+        if (deployment.timeout > 0)
+            System.out.printf("Timeout:     %d ms%n", deployment.timeout);
+        if (Objects.nonNull(deployment.throttle))
+            System.out.printf("Limit:       %d bytes/s%n", deployment.throttle.rate);
+        if (deployment.compress)
+            System.out.println("Compress:    deflate");
+        if (deployment.cache)
+            System.out.println("Cache:       yes");
         if (deployment.verbose)
             System.out.println("Verbose:     yes");
         System.out.println();
-        try {deployment.push();
-        } catch (Exception exception) {
-            if (exception instanceof AbortState)
-                throw exception;
-            exception.printStackTrace(System.out);
-            throw new AbortState(exception);
+        if (deployments.length == 1) {
+            try {deployment.push();
+            } catch (Exception exception) {
+                if (exception instanceof AbortState)
+                    throw exception;
+                exception.printStackTrace(System.out);
+                throw new AbortState(exception);
+            }
+            return;
+        }
+
+        // With several destinations, the uploads run at the same time, each
+        // in its own thread and with its own limit of concurrent chunks. A
+        // failed upload does not stop the others. At the end, the result of
+        // each destination is summarized.
+        final long timing = System.currentTimeMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(deployments.length);
+        final List<Future<Long>> results = new ArrayList<>();
+        try {
+            for (final Deployment target : deployments)
+                results.add(executor.submit(() -> {
+                    try {target.push();
+                    } catch (Exception exception) {
+                        if (exception instanceof AbortState)
+                            throw exception;
+                        exception.printStackTrace(System.out);
+                        throw new AbortState(exception);
+                    }
+                    return System.currentTimeMillis() -timing;
+                }));
+            final List<String> summary = new ArrayList<>();
+            int failures = 0;
+            for (int index = 0; index < deployments.length; index++) {
+                final Deployment target = deployments[index];
+                try {summary.add(String.format("%s%s complete (%d ms)", target.label, target.destination, results.get(index).get()));
+                } catch (ExecutionException exception) {
+                    summary.add(String.format("%s%s failed", target.label, target.destination));
+                    failures++;
+                }
+            }
+            System.out.println();
+            summary.forEach(System.out::println);
+            if (failures > 0)
+                throw new AbortState(String.format("%d of %d destinations failed", failures, deployments.length));
+        } finally {
+            executor.shutdownNow();
         }
     }
 
+    @Name("com.seanox.RemoteDeployment.FileChecksum")
+    @Label("File Checksum")
+    @Description("Calculation of the checksums and boundaries of the chunks of the file")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class FileChecksumEvent extends Event {
+        @Label("File") private String file;
+        @Label("Size") @DataAmount private long size;
+        @Label("Count") private int count;
+        @Label("Content-Defined") private boolean chunking;
+        @Label("Hashing") private boolean hashing;
+    }
+
+    @Name("com.seanox.RemoteDeployment.PackageSent")
+    @Label("Package Sent")
+    @Description("Sending of a chunk or a range of chunks, including the retries")
+    @Category({"Seanox", "Remote Deployment"})
+    @StackTrace(false)
+    private static class PackageSentEvent extends Event {
+        @Label("Destination") private String destination;
+        @Label("UUID") private String uuid;
+        @Label("Number") private int number;
+        @Label("Last Number") private int last;
+        @Label("Count") private int count;
+        @Label("Size") @DataAmount private long size;
+        @Label("Compressed") private boolean compressed;
+        @Label("Status") private int status;
+    }
+
     private static class Deployment {
 
         private final URL destination;
+        private final String label;
         private final String secret;
         private final File file;
         private final String[] requestHeader;
         private final Proxy httpProxy;
         private final String checkSum;
+        private final PackageLayout fileLayout;
+        private final File packageFile;
         private final int packageCount;
         private final int packageSize;
+        private final long[] packageOffsets;
+        private final boolean chunking;
+        private final long adaptiveSize;
+        private final AtomicLong adaptiveTarget;
+        private final String[] packageCheckSums;
+        private final String[] packageHashes;
+        private final boolean delta;
+        private final File deltaFile;
+        private final String deltaCheckSum;
+        private final int concurrency;
+        private final int retries;
+        private final long timeBudget;
+        private final HttpClient.Version httpVersion;
+        private final int connections;
+        private final int executorThreads;
+        private final ExecutorService executor;
+        private final long timeout;
+        private final PackageThrottle throttle;
+        private final boolean resume;
+        private final File resumeFile;
+        private final boolean compress;
+        private final boolean cache;
         private final boolean verbose;
         private final boolean debugMode;
         private final String uuid;
@@ -161,6 +446,114 @@ public class RemoteDeploymentPush {
             return size > 0 ? size : 4 *1024 *1024;
         }
 
+        private static long detectAdaptiveSize(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return 0;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-a");
+            final long size = index >= 0 && index < options.size() -1 ? Long.valueOf(options.get(index +1)) : -1;
+            return Math.max(size, 0);
+        }
+
+        private static boolean detectChunking(final String... arguments) {
+            return Arrays.stream(arguments).map(String::toLowerCase).collect(Collectors.toList()).contains("-b");
+        }
+
+        private static int detectConcurrency(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return 1;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-c");
+            final int concurrency = index >= 0 && index < options.size() -1 ? Integer.valueOf(options.get(index +1)) : -1;
+            return concurrency > 0 ? concurrency : 1;
+        }
+
+        private static int detectRetries(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return PACKAGE_RETRIES;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-t");
+            final int retries = index >= 0 && index < options.size() -1 ? Integer.valueOf(options.get(index +1)) : -1;
+            return retries >= 0 ? retries : PACKAGE_RETRIES;
+        }
+
+        private static long detectTimeBudget(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return 0;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-m");
+            final long timeBudget = index >= 0 && index < options.size() -1 ? Long.valueOf(options.get(index +1)) : -1;
+            return Math.max(timeBudget, 0);
+        }
+
+        private static HttpClient.Version detectHttpVersion(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return null;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-u");
+            if (index < 0
+                    || index >= options.size() -1)
+                return null;
+            final String version = options.get(index +1).trim();
+            if (version.matches("^(?i)(h2c?|2|http/2)$"))
+                return HttpClient.Version.HTTP_2;
+            if (version.matches("^(?i)(1\\.1|http/1\\.1)$"))
+                return HttpClient.Version.HTTP_1_1;
+            throw new WrongArgumentState("Invalid HTTP version: " + version);
+        }
+
+        private static int detectConnections(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return 1;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-n");
+            final int connections = index >= 0 && index < options.size() -1 ? Integer.valueOf(options.get(index +1)) : -1;
+            return connections > 0 ? connections : 1;
+        }
+
+        private static int detectExecutorThreads(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return 0;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-e");
+            final int threads = index >= 0 && index < options.size() -1 ? Integer.valueOf(options.get(index +1)) : -1;
+            return Math.max(threads, 0);
+        }
+
+        private static long detectTimeout(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return 0;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-o");
+            final long timeout = index >= 0 && index < options.size() -1 ? Long.valueOf(options.get(index +1)) : -1;
+            return Math.max(timeout, 0);
+        }
+
+        private static long detectLimit(final String... arguments) {
+            if (Objects.isNull(arguments))
+                return 0;
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            final int index = options.stream().map(String::toLowerCase).collect(Collectors.toList()).indexOf("-l");
+            final long limit = index >= 0 && index < options.size() -1 ? Long.valueOf(options.get(index +1)) : -1;
+            return Math.max(limit, 0);
+        }
+
+        private static boolean detectResume(final String... arguments) {
+            return Arrays.stream(arguments).map(String::toLowerCase).collect(Collectors.toList()).contains("-r");
+        }
+
+        private static boolean detectCompress(final String... arguments) {
+            return Arrays.stream(arguments).map(String::toLowerCase).collect(Collectors.toList()).contains("-z");
+        }
+
+        private static boolean detectDelta(final String... arguments) {
+            return Arrays.stream(arguments).map(String::toLowerCase).collect(Collectors.toList()).contains("-x");
+        }
+
+        private static boolean detectCache(final String... arguments) {
+            return Arrays.stream(arguments).map(String::toLowerCase).collect(Collectors.toList()).contains("-k");
+        }
+
         private static boolean detectVerbose(final String... arguments) {
             return Arrays.stream(arguments).map(String::toLowerCase).collect(Collectors.toList()).contains("-v");
         }
@@ -169,36 +562,115 @@ public class RemoteDeploymentPush {
             return Arrays.stream(arguments).map(String::toLowerCase).collect(Collectors.toList()).contains("-d");
         }
         
-        private static String calcFileCheckSum(final File file)
+        private static String encodeHex(final byte[] bytes) {
+            final StringBuilder result = new StringBuilder();
+            for (final byte digit : bytes)
+                result.append(String.format("%02x", digit));
+            return result.toString().toUpperCase();
+        }
+
+        /**
+         * Checksum and chunks of a file. The layout is calculated only once
+         * and is shared by all destinations that receive the file itself and
+         * not a delta.
+         */
+        private static class PackageLayout {
+
+            private final String checkSum;
+            private final long[] offsets;
+            private final String[] checkSums;
+            private final String[] hashes;
+
+            private PackageLayout(final String checkSum, final List<Long> offsets, final List<String> checkSums, final List<String> hashes) {
+                this.checkSum = checkSum;
+                this.offsets = offsets.stream().mapToLong(Long::longValue).toArray();
+                this.checkSums = checkSums.toArray(new String[0]);
+                this.hashes = Objects.nonNull(hashes) ? hashes.toArray(new String[0]) : null;
+            }
+        }
+
+        private static PackageLayout calcFileCheckSum(final File file, final int packageSize, final boolean chunking, final boolean hashing)
                 throws Exception {
+
+            // In the same pass, the boundaries and the checksums of the chunks
+            // are calculated, which are sent with the chunks for the check by
+            // the receiver. Optionally also the SHA-256 of the chunks for the
+            // cache. With content-defined chunking, a boundary is set where
+            // the upper bits of a rolling hash over the last bytes are zero,
+            // but not before the minimum and not after the maximum size.
+            final FileChecksumEvent event = new FileChecksumEvent();
+            event.begin();
             final MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            final MessageDigest packageDigest = MessageDigest.getInstance("MD5");
+            final MessageDigest packageHashDigest = hashing ? MessageDigest.getInstance("SHA-256") : null;
+            final List<Long> packageOffsets = new ArrayList<>();
+            final List<String> packageCheckSums = new ArrayList<>();
+            final List<String> packageHashes = hashing ? new ArrayList<>() : null;
+            final long minimum = packageSize /4;
+            final long maximum = (long)packageSize *4;
+            final int bits = Long.numberOfTrailingZeros(Long.highestOneBit(Math.max(2, packageSize -minimum)));
+            final long mask = -1L << (Long.SIZE -bits);
+            packageOffsets.add(0L);
             try (final InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
                 final byte[] buffer = new byte[0xFFFF];
-                for (int size; (size = inputStream.read(buffer)) >= 0;)
+                long position = 0;
+                long start = 0;
+                long hash = 0;
+                for (int size; (size = inputStream.read(buffer)) >= 0;) {
                     messageDigest.update(buffer, 0, size);
-                final StringBuilder result = new StringBuilder();
-                for (final byte digit : messageDigest.digest())
-                    result.append(String.format("%02x", digit));
-                return result.toString().toUpperCase();
+                    int offset = 0;
+                    for (int index = 0; index < size; index++) {
+                        if (chunking) {
+                            hash = (hash << 1) +PACKAGE_GEAR[buffer[index] & 0xFF];
+                            final long length = position +index +1 -start;
+                            if (length < maximum
+                                    && (length < minimum || (hash & mask) != 0))
+                                continue;
+                        } else {
+                            final long remaining = start +packageSize -(position +index);
+                            if (remaining > size -index)
+                                break;
+                            index += (int)remaining -1;
+                        }
+                        packageDigest.update(buffer, offset, index +1 -offset);
+                        if (Objects.nonNull(packageHashDigest))
+                            packageHashDigest.update(buffer, offset, index +1 -offset);
+                        offset = index +1;
+                        start = position +offset;
+                        hash = 0;
+                        packageOffsets.add(start);
+                        packageCheckSums.add(Deployment.encodeHex(packageDigest.digest()));
+                        if (Objects.nonNull(packageHashDigest))
+                            packageHashes.add(Deployment.encodeHex(packageHashDigest.digest()));
+                    }
+                    packageDigest.update(buffer, offset, size -offset);
+                    if (Objects.nonNull(packageHashDigest))
+                        packageHashDigest.update(buffer, offset, size -offset);
+                    position += size;
+                }
+                if (position > start) {
+                    packageOffsets.add(position);
+                    packageCheckSums.add(Deployment.encodeHex(packageDigest.digest()));
+                    if (Objects.nonNull(packageHashDigest))
+                        packageHashes.add(Deployment.encodeHex(packageHashDigest.digest()));
+                }
+                event.file = file.getPath();
+                event.size = position;
+                event.count = packageCheckSums.size();
+                event.chunking = chunking;
+                event.hashing = hashing;
+                event.commit();
+                return new PackageLayout(Deployment.encodeHex(messageDigest.digest()),
+                        packageOffsets, packageCheckSums, packageHashes);
             }
         }
 
-        private Deployment(final String... arguments)
+        private Deployment(final URL destination, final int target, final int targets, final Deployment template, final String... arguments)
                 throws Exception {
 
-            if (Objects.isNull(arguments))
-                throw new WrongArgumentState();
             final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
-            if (options.size() < 3
-                    || options.get(0).isBlank()
-                    || options.get(1).isBlank()
-                    || options.get(2).isBlank())
-                throw new WrongArgumentState();
-
-            try {this.destination = new URL(options.get(0));
-            } catch (MalformedURLException exception) {
-                throw new WrongArgumentState("Invalid destination URL", exception);
-            }
+            this.destination = destination;
+            this.label = targets > 1 ? String.format("[%d] ", target) : "";
 
             this.secret = options.get(1);
             if (this.secret.isBlank())
@@ -211,74 +683,809 @@ public class RemoteDeploymentPush {
                     || !this.file.isFile())
                 throw new WrongArgumentState("Invalid path of data file: " + this.file);
 
-            this.checkSum = Deployment.calcFileCheckSum(this.file);
             this.requestHeader = Deployment.detectRequestHeader(arguments);
             this.httpProxy = Deployment.detectHttpProxy(arguments);
             this.packageSize = Deployment.detectPackageSize(arguments);
-            this.packageCount = (int)Math.ceil(this.file.length() /(double)(this.packageSize));
+            this.chunking = Deployment.detectChunking(arguments);
+            this.adaptiveSize = Deployment.detectAdaptiveSize(arguments);
+            this.adaptiveTarget = new AtomicLong(this.packageSize);
+            this.cache = Deployment.detectCache(arguments);
+            this.fileLayout = Objects.nonNull(template) ? template.fileLayout
+                    : Deployment.calcFileCheckSum(this.file, this.packageSize, this.chunking, this.cache);
+            this.checkSum = this.fileLayout.checkSum;
+            this.concurrency = Deployment.detectConcurrency(arguments);
+            this.retries = Deployment.detectRetries(arguments);
+            this.timeBudget = Deployment.detectTimeBudget(arguments);
+            this.httpVersion = Deployment.detectHttpVersion(arguments);
+            this.connections = Deployment.detectConnections(arguments);
+            this.executorThreads = Deployment.detectExecutorThreads(arguments);
+            this.timeout = Deployment.detectTimeout(arguments);
+
+            // The limit applies to all destinations together, because they
+            // usually share the same uplink.
+            final long limit = Deployment.detectLimit(arguments);
+            this.throttle = Objects.nonNull(template) ? template.throttle
+                    : limit > 0 ? new PackageThrottle(limit) : null;
+
+            // The threads of the executor are daemons, so that they do not
+            // prevent the end of the program.
+            this.executor = this.executorThreads > 0 ? Executors.newFixedThreadPool(this.executorThreads, runnable -> {
+                final Thread thread = new Thread(runnable, RemoteDeploymentPush.class.getSimpleName() + "-" + this.destination.getHost());
+                thread.setDaemon(true);
+                return thread;
+            }) : null;
             this.verbose = Deployment.detectVerbose(arguments);
             this.debugMode = Deployment.detectDebugMode(arguments);
-            this.uuid = UUID.randomUUID().toString().toUpperCase();
+            this.resume = Deployment.detectResume(arguments);
+            this.compress = Deployment.detectCompress(arguments);
+            this.delta = Deployment.detectDelta(arguments);
+
+            // For resuming, the UUID of the upload is kept in a file in the
+            // temp directory until the upload is complete. The name of the
+            // file is derived from the destination, the file, its checksum
+            // and the chunk size, so only the same upload is resumed.
+            final MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            messageDigest.update(String.format("%s|%s|%s|%d%s", this.destination, this.file.getCanonicalPath(),
+                    this.checkSum, this.packageSize, this.chunking ? "|b" : "").getBytes(StandardCharsets.UTF_8));
+            this.resumeFile = new File(System.getProperty("java.io.tmpdir"),
+                    RemoteDeploymentPush.class.getSimpleName() + "-" + Deployment.encodeHex(messageDigest.digest()) + ".resume");
+            if (this.resume
+                    && this.resumeFile.isFile())
+                this.uuid = Files.readString(this.resumeFile.toPath()).trim();
+            else this.uuid = UUID.randomUUID().toString().toUpperCase();
+            if (this.resume)
+                Files.writeString(this.resumeFile.toPath(), this.uuid);
+
+            // With a delta, the chunks are created from the delta and not from
+            // the file. The checksum in the Package header remains that of the
+            // file, which the receiver rebuilds from the delta.
+            this.deltaFile = this.delta ? this.createDelta() : null;
+            final PackageLayout packageLayout;
+            if (Objects.nonNull(this.deltaFile)) {
+                this.packageFile = this.deltaFile;
+                packageLayout = Deployment.calcFileCheckSum(this.deltaFile, this.packageSize, this.chunking, this.cache);
+                this.deltaCheckSum = packageLayout.checkSum;
+            } else {
+                this.packageFile = this.file;
+                packageLayout = this.fileLayout;
+                this.deltaCheckSum = null;
+            }
+            this.packageOffsets = packageLayout.offsets;
+            this.packageCount = this.packageOffsets.length -1;
+            this.packageCheckSums = packageLayout.checkSums;
+            this.packageHashes = packageLayout.hashes;
+        }
+
+        private static int calcRollingCheckSum(final ByteBuffer buffer, final int position, final int length) {
+            int a = 0;
+            int b = 0;
+            for (int index = 0; index < length; index++) {
+                a += buffer.get(position +index) & 0xFF;
+                b += (length -index) *(buffer.get(position +index) & 0xFF);
+            }
+            return (a & 0xFFFF) | (b << 16);
+        }
+
+        private static void writeDeltaCopy(final DataOutputStream outputStream, final long offset, final int length)
+                throws IOException {
+            if (length <= 0)
+                return;
+            outputStream.writeByte(DELTA_COPY);
+            outputStream.writeLong(offset);
+            outputStream.writeInt(length);
+        }
+
+        private static void writeDeltaLiteral(final DataOutputStream outputStream, final ByteBuffer buffer, final int position, final int length)
+                throws IOException {
+            if (length <= 0)
+                return;
+            outputStream.writeByte(DELTA_LITERAL);
+            outputStream.writeInt(length);
+            final byte[] bytes = new byte[0xFFFF];
+            final ByteBuffer slice = buffer.duplicate().position(position);
+            for (int size; (size = Math.min(bytes.length, position +length -slice.position())) > 0;) {
+                slice.get(bytes, 0, size);
+                outputStream.write(bytes, 0, size);
+            }
+        }
+
+        private File createDelta()
+                throws Exception {
+
+            // The receiver sends the block size and for each block of the
+            // deployed file a line with the rolling checksum and the MD5. If
+            // the receiver does not support this, no delta is used.
+            final HttpResponse<Stream<String>> response = this.createClient().send(
+                    this.createRequestBuilder("0").GET().build(),
+                    HttpResponse.BodyHandlers.ofLines());
+            final String blockSizeHeader = response.headers().firstValue(HTTP_HEADER_PACKAGE_DELTA).orElse("");
+            if (response.statusCode() != 200
+                    || !blockSizeHeader.matches("^\\s*0*[1-9]\\d{0,8}\\s*$")) {
+                response.body().close();
+                return null;
+            }
+            final int blockSize = Integer.valueOf(blockSizeHeader.trim());
+            final Map<Integer, List<Integer>> blocks = new HashMap<>();
+            final List<String> blockCheckSums = new ArrayList<>();
+            final String signaturePattern = "^\\s*([0-9A-Fa-f]{8})/([0-9A-Fa-f]{32})\\s*$";
+            try (final Stream<String> lines = response.body()) {
+                for (final String line : (Iterable<String>)lines::iterator) {
+                    if (line.isBlank())
+                        continue;
+                    if (!line.matches(signaturePattern))
+                        return null;
+                    final int rollingCheckSum = Integer.parseUnsignedInt(line.replaceAll(signaturePattern, "$1"), 16);
+                    blocks.computeIfAbsent(rollingCheckSum, key -> new ArrayList<>()).add(blockCheckSums.size());
+                    blockCheckSums.add(line.replaceAll(signaturePattern, "$2"));
+                }
+            }
+
+            // The file is scanned with a rolling checksum byte by byte. If the
+            // rolling checksum matches a block of the deployed file, the MD5
+            // decides. Matching blocks are sent as a reference, adjacent
+            // references are combined. All other data is sent as it is. The
+            // file is mapped in windows, so that the size of the file is not
+            // limited by the size of a mapping. Before the next window, the
+            // pending data is written, only the rolling checksum continues.
+            if (blockSize > DELTA_WINDOW /4)
+                return null;
+            final File deltaFile = File.createTempFile(RemoteDeploymentPush.class.getSimpleName() + "-", ".delta");
+            deltaFile.deleteOnExit();
+            try (final FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+                    final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(deltaFile)))) {
+                final MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+                final long length = channel.size();
+                long base = 0;
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(DELTA_WINDOW, length -base));
+                long position = 0;
+                long literal = 0;
+                long copyOffset = 0;
+                int copyLength = 0;
+                int rollingCheckSum = 0;
+                boolean rolling = false;
+                while (position +blockSize <= length) {
+                    if (position -base +blockSize >= buffer.limit()
+                            && base +buffer.limit() < length) {
+                        if (literal < position) {
+                            Deployment.writeDeltaCopy(outputStream, copyOffset, copyLength);
+                            Deployment.writeDeltaLiteral(outputStream, buffer, (int)(literal -base), (int)(position -literal));
+                            copyLength = 0;
+                            literal = position;
+                        }
+                        base = position;
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(DELTA_WINDOW, length -base));
+                    }
+                    final int index = (int)(position -base);
+                    if (!rolling)
+                        rollingCheckSum = Deployment.calcRollingCheckSum(buffer, index, blockSize);
+                    rolling = true;
+                    int block = -1;
+                    final List<Integer> candidates = blocks.get(rollingCheckSum);
+                    if (Objects.nonNull(candidates)) {
+                        messageDigest.update(buffer.duplicate().position(index).limit(index +blockSize));
+                        final String blockCheckSum = Deployment.encodeHex(messageDigest.digest());
+                        for (final int candidate : candidates)
+                            if (blockCheckSums.get(candidate).equalsIgnoreCase(blockCheckSum)) {
+                                block = candidate;
+                                break;
+                            }
+                    }
+                    if (block >= 0) {
+                        if (literal < position) {
+                            Deployment.writeDeltaCopy(outputStream, copyOffset, copyLength);
+                            Deployment.writeDeltaLiteral(outputStream, buffer, (int)(literal -base), (int)(position -literal));
+                            copyLength = 0;
+                        }
+                        if (copyLength > 0
+                                && copyLength <= Integer.MAX_VALUE -blockSize
+                                && copyOffset +copyLength == (long)block *blockSize)
+                            copyLength += blockSize;
+                        else {
+                            Deployment.writeDeltaCopy(outputStream, copyOffset, copyLength);
+                            copyOffset = (long)block *blockSize;
+                            copyLength = blockSize;
+                        }
+                        position += blockSize;
+                        literal = position;
+                        rolling = false;
+                        continue;
+                    }
+                    if (position +blockSize < length) {
+                        final int a = ((rollingCheckSum & 0xFFFF) -(buffer.get(index) & 0xFF) +(buffer.get(index +blockSize) & 0xFF)) & 0xFFFF;
+                        final int b = ((rollingCheckSum >>> 16) -blockSize *(buffer.get(index) & 0xFF) +a) & 0xFFFF;
+                        rollingCheckSum = a | (b << 16);
+                    }
+                    position++;
+                }
+                Deployment.writeDeltaCopy(outputStream, copyOffset, copyLength);
+                if (base +buffer.limit() < length) {
+                    base = literal;
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length -base);
+                }
+                Deployment.writeDeltaLiteral(outputStream, buffer, (int)(literal -base), (int)(length -literal));
+            } catch (Exception exception) {
+                deltaFile.delete();
+                throw exception;
+            }
+            return deltaFile;
         }
 
-        private static Deployment create(final String... arguments)
+        private static Deployment[] create(final String... arguments)
                 throws Exception {
-            return new Deployment(arguments);
+
+            if (Objects.isNull(arguments))
+                throw new WrongArgumentState();
+            final List<String> options = Arrays.stream(arguments).filter(Objects::nonNull).collect(Collectors.toList());
+            if (options.size() < 3
+                    || options.get(0).isBlank()
+                    || options.get(1).isBlank()
+                    || options.get(2).isBlank())
+                throw new WrongArgumentState();
+
+            // Several destinations can be specified separated by commas. The
+            // checksums and the chunk layout are calculated only once, each
+            // destination has its own upload with its own UUID and reads the
+            // file itself while sending.
+            final List<URL> destinations = new ArrayList<>();
+            for (final String destination : options.get(0).split(",")) {
+                if (destination.isBlank())
+                    continue;
+                try {destinations.add(new URL(destination.trim()));
+                } catch (MalformedURLException exception) {
+                    throw new WrongArgumentState("Invalid destination URL", exception);
+                }
+            }
+            if (destinations.isEmpty())
+                throw new WrongArgumentState("Invalid destination URL");
+
+            final Deployment[] deployments = new Deployment[destinations.size()];
+            for (int index = 0; index < deployments.length; index++)
+                deployments[index] = new Deployment(destinations.get(index), index +1, deployments.length,
+                        index > 0 ? deployments[0] : null, arguments);
+            return deployments;
         }
 
         private HttpClient createClient() {
             final HttpClient.Builder builder = HttpClient.newBuilder();
+            if (Objects.nonNull(this.httpVersion))
+                builder.version(this.httpVersion);
+            if (Objects.nonNull(this.executor))
+                builder.executor(this.executor);
+            if (this.timeout > 0)
+                builder.connectTimeout(Duration.ofMillis(this.timeout));
             if (Objects.nonNull(this.httpProxy))
                 builder.proxy(ProxySelector.of(
                         (InetSocketAddress)this.httpProxy.address()));
             return builder.build();
         }
 
+        private HttpRequest.Builder createRequestBuilder(final String packageNumber)
+                throws URISyntaxException {
+            final HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                    .uri(this.destination.toURI());
+            if (this.timeout > 0)
+                requestBuilder.timeout(Duration.ofMillis(this.timeout));
+            if (Objects.nonNull(this.requestHeader))
+                for (final String property : this.requestHeader) {
+                    final String propertyPattern = "^\\s*(.*?)\\s*(?::\\s*(.*?))?\\s*$";
+                    final String propertyKey = property.replaceAll(propertyPattern, "$1");
+                    final String propertyValue = property.replaceAll(propertyPattern, "$2");
+                    if (propertyKey.isBlank()
+                            || propertyValue.isBlank())
+                        continue;
+                    requestBuilder.header(propertyKey, propertyValue);
+                }
+            requestBuilder.header(HTTP_HEADER_PACKAGE,
+                    String.format("%s/%s/%s/%s/%s",
+                            this.uuid, this.secret, packageNumber, this.packageCount, this.checkSum));
+            return requestBuilder;
+        }
+
+        private static String calcPackageCheckSum(final FileChannel channel, final long position, final long size)
+                throws Exception {
+            final MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            final ByteBuffer buffer = ByteBuffer.allocate(0xFFFF);
+            for (long offset = position; offset < position +size;) {
+                buffer.clear().limit((int)Math.min(buffer.capacity(), position +size -offset));
+                final int length = channel.read(buffer, offset);
+                if (length < 0)
+                    throw new IOException("Unexpected end of file");
+                messageDigest.update(buffer.flip());
+                offset += length;
+            }
+            return Deployment.encodeHex(messageDigest.digest());
+        }
+
+        private HttpRequest createRequest(final int packageNumber, final int packageLast, final FileChannel channel,
+                final long position, final long size, final long deadline)
+                throws Exception {
+
+            // Several consecutive chunks are sent as a range of numbers. Their
+            // checksum is calculated when the request is created, the checksum
+            // of a single chunk is already known.
+            final HttpRequest.Builder requestBuilder = this.createRequestBuilder(packageNumber == packageLast
+                    ? String.valueOf(packageNumber) : packageNumber + "-" + packageLast);
+            requestBuilder.header(HTTP_HEADER_PACKAGE_RANGE,
+                    String.format("%d-%d/%d", position, position +size -1, this.packageFile.length()));
+            requestBuilder.header(HTTP_HEADER_PACKAGE_CHECKSUM, packageNumber == packageLast
+                    ? this.packageCheckSums[packageNumber -1] : Deployment.calcPackageCheckSum(channel, position, size));
+            if (Objects.nonNull(this.deltaCheckSum))
+                requestBuilder.header(HTTP_HEADER_PACKAGE_DELTA, this.deltaCheckSum);
+            if (this.compress)
+                requestBuilder.header(HTTP_HEADER_CONTENT_ENCODING, "deflate");
+            if (deadline > 0)
+                requestBuilder.timeout(Duration.ofMillis(Math.max(1, this.timeout > 0
+                        ? Math.min(this.timeout, deadline -System.currentTimeMillis()) : deadline -System.currentTimeMillis())));
+            requestBuilder.PUT(new PackagePublisher(channel, position, size, this.compress, this.throttle));
+            return requestBuilder.build();
+        }
+
+        /**
+         * Token bucket for limiting the sent bytes per second. The bucket is
+         * filled with the rate per second up to the content of one second.
+         * Taking the bytes sent is always possible, the bucket can become
+         * negative. The result is then the time in milliseconds until the
+         * deficit is balanced and the next data can be sent.
+         */
+        private static class PackageThrottle {
+
+            private final long rate;
+            private double tokens;
+            private long timing;
+
+            private PackageThrottle(final long rate) {
+                this.rate = rate;
+                this.tokens = rate;
+                this.timing = System.nanoTime();
+            }
+
+            private synchronized long take(final long size) {
+                final long timing = System.nanoTime();
+                this.tokens = Math.min(this.rate, this.tokens +(timing -this.timing) *(double)this.rate /1000000000L);
+                this.timing = timing;
+                this.tokens -= size;
+                return this.tokens >= 0 ? 0 : (long)Math.ceil(-this.tokens *1000 /this.rate);
+            }
+        }
+
+        /**
+         * Publisher for the body of a chunk. The data is not copied into the
+         * heap, the region of the chunk is mapped from the file in windows and
+         * published in slices. The mapping is created again for each subscription, so
+         * the request can be sent again if necessary. Thus, the memory
+         * required by the client does not depend on the chunk size. With
+         * compression, the slices are deflated in the same way, one by one
+         * when requested, and the length of the body is unknown.
+         */
+        private static class PackagePublisher implements HttpRequest.BodyPublisher {
+
+            private static final int SLICE_SIZE = 0xFFFF;
+
+            private static final int WINDOW_SIZE = 64 *1024 *1024;
+
+            private final FileChannel channel;
+            private final long position;
+            private final long size;
+            private final boolean compress;
+            private final PackageThrottle throttle;
+
+            private PackagePublisher(final FileChannel channel, final long position, final long size, final boolean compress,
+                    final PackageThrottle throttle) {
+                this.channel = channel;
+                this.position = position;
+                this.size = size;
+                this.compress = compress;
+                this.throttle = throttle;
+            }
+
+            @Override
+            public long contentLength() {
+                return this.compress ? -1 : this.size;
+            }
+
+            @Override
+            public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+
+                // The range is mapped in windows when it is read, so the size
+                // of a request is not limited by the size of a mapping, e.g.
+                // with option -a.
+                subscriber.onSubscribe(new Flow.Subscription() {
+
+                    private final AtomicLong demand = new AtomicLong();
+                    private final AtomicInteger work = new AtomicInteger();
+                    private final Deflater deflater = PackagePublisher.this.compress ? new Deflater() : null;
+                    private volatile boolean done;
+                    private ByteBuffer buffer;
+                    private long offset;
+
+                    private ByteBuffer read()
+                            throws IOException {
+                        if (Objects.isNull(this.buffer)
+                                || !this.buffer.hasRemaining())
+                            this.buffer = PackagePublisher.this.channel.map(FileChannel.MapMode.READ_ONLY,
+                                    PackagePublisher.this.position +this.offset, Math.min(WINDOW_SIZE, PackagePublisher.this.size -this.offset));
+                        final ByteBuffer slice = this.buffer.slice();
+                        slice.limit(Math.min(slice.remaining(), SLICE_SIZE));
+                        this.buffer.position(this.buffer.position() +slice.limit());
+                        this.offset += slice.limit();
+                        return slice;
+                    }
+
+                    private ByteBuffer next()
+                            throws IOException {
+                        if (Objects.isNull(this.deflater))
+                            return this.read();
+                        final ByteBuffer output = ByteBuffer.allocate(SLICE_SIZE);
+                        while (output.hasRemaining()
+                                && !this.deflater.finished()) {
+                            if (this.deflater.needsInput()
+                                    && this.offset < PackagePublisher.this.size)
+                                this.deflater.setInput(this.read());
+                            else if (this.offset >= PackagePublisher.this.size)
+                                this.deflater.finish();
+                            this.deflater.deflate(output);
+                        }
+                        return output.flip();
+                    }
+
+                    private boolean isExhausted() {
+                        if (Objects.isNull(this.deflater))
+                            return this.offset >= PackagePublisher.this.size;
+                        return this.deflater.finished();
+                    }
+
+                    @Override
+                    public void request(final long number) {
+                        if (number <= 0) {
+                            this.done = true;
+                            subscriber.onError(new IllegalArgumentException("Non-positive request"));
+                            return;
+                        }
+                        this.demand.accumulateAndGet(number, (demand, request) ->
+                                demand +request < 0 ? Long.MAX_VALUE : demand +request);
+
+                        // Requests can also be made from onNext, so only one
+                        // thread publishes at a time and the others only
+                        // increase the demand.
+                        if (this.work.getAndIncrement() != 0)
+                            return;
+                        this.publish();
+                    }
+
+                    private void publish() {
+                        do {while (!this.done
+                                    && !this.isExhausted()
+                                    && this.demand.get() > 0) {
+                                final ByteBuffer slice;
+                                try {slice = this.next();
+                                } catch (IOException exception) {
+                                    this.done = true;
+                                    if (Objects.nonNull(this.deflater))
+                                        this.deflater.end();
+                                    subscriber.onError(exception);
+                                    break;
+                                }
+                                if (!slice.hasRemaining())
+                                    continue;
+                                this.demand.decrementAndGet();
+                                subscriber.onNext(slice);
+
+                                // With a limit, publishing is paused until
+                                // the bucket allows the next data. No thread
+                                // waits for this, the publishing thread keeps
+                                // its role and is continued by a delayed task.
+                                final long delay = Objects.nonNull(PackagePublisher.this.throttle)
+                                        ? PackagePublisher.this.throttle.take(slice.limit()) : 0;
+                                if (delay > 0
+                                        && !this.isExhausted()) {
+                                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(this::publish);
+                                    return;
+                                }
+                            }
+                            if (!this.done
+                                    && this.isExhausted()) {
+                                this.done = true;
+                                if (Objects.nonNull(this.deflater))
+                                    this.deflater.end();
+                                subscriber.onComplete();
+                            }
+                        } while (this.work.decrementAndGet() != 0);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        this.done = true;
+                    }
+                });
+            }
+        }
+
+        private CompletableFuture<HttpResponse<Void>> send(final HttpClient client, final HttpRequest request,
+                final int number, final int last, final long deadline, final int retry) {
+
+            // A chunk is sent again after an I/O error, a server error, if the
+            // receiver has rejected the chunk as corrupted or if the chunk is
+            // just being received by another request (409). Status 423 means
+            // that the chunks have already been received, which is confirmed
+            // with a status request before they are skipped, otherwise they
+            // are sent again. All other responses are final, e.g. 404 if the
+            // endpoint or the secret does not match, because a retry does not
+            // change that. The waiting time before a retry doubles each time
+            // and is varied randomly between half and full length (jitter),
+            // but is at least the Retry-After of the receiver. No retry is
+            // made if the time limit would be exceeded.
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenCompose(response -> {
+                        if (response.statusCode() != SC_PACKAGE_LOCKED)
+                            return CompletableFuture.completedFuture(response);
+                        return this.confirm(client, number, last).thenApply(confirmed -> {
+                            if (!confirmed)
+                                throw new CompletionException(new IOException("Package is locked"));
+                            return response;
+                        });
+                    })
+                    .handle((response, throwable) -> {
+                        final long delay = Math.min(PACKAGE_RETRY_DELAY_MAX, PACKAGE_RETRY_DELAY << Math.min(retry, 16));
+                        final long jitter = Math.max(delay /2 +ThreadLocalRandom.current().nextLong(delay /2 +1),
+                                Objects.nonNull(response) ? Deployment.detectRetryAfter(response) : 0);
+                        if (retry < this.retries
+                                && (deadline <= 0 || System.currentTimeMillis() +jitter < deadline)
+                                && (Objects.nonNull(throwable)
+                                        || response.statusCode() >= 500
+                                        || response.statusCode() == SC_PACKAGE_CHECKSUM_MISMATCH
+                                        || response.statusCode() == SC_PACKAGE_BUSY))
+                            return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(jitter, TimeUnit.MILLISECONDS))
+                                    .thenCompose(empty -> this.send(client, request, number, last, deadline, retry +1));
+                        if (Objects.nonNull(throwable))
+                            return CompletableFuture.<HttpResponse<Void>>failedFuture(throwable);
+                        return CompletableFuture.completedFuture(response);
+                    })
+                    .thenCompose(Function.identity());
+        }
+
+        private static long detectRetryAfter(final HttpResponse<Void> response) {
+            final String retryAfter = response.headers().firstValue(HTTP_HEADER_RETRY_AFTER).orElse("");
+            if (!retryAfter.matches("^\\s*\\d{1,6}\\s*$"))
+                return 0;
+            return Long.valueOf(retryAfter.trim()) *1000;
+        }
+
+        private CompletableFuture<Boolean> confirm(final HttpClient client, final int number, final int last) {
+
+            // The chunks answered with status 423 are only skipped if the
+            // status request lists all of them as received.
+            final HttpRequest request;
+            try {request = this.createRequestBuilder("0").method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+            } catch (URISyntaxException exception) {
+                return CompletableFuture.failedFuture(exception);
+            }
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenApply(response -> {
+                        final boolean[] packagesReceived = new boolean[this.packageCount];
+                        this.detectPackagesReceived(response, packagesReceived);
+                        for (int loop = number; loop <= last; loop++)
+                            if (!packagesReceived[loop -1])
+                                return false;
+                        return true;
+                    });
+        }
+
+        private boolean[] detectPackagesReceived(final HttpClient client)
+                throws Exception {
+
+            // The receiver answers the status request with the numbers of the
+            // chunks already received, e.g. 1-17,19,21-30. If the receiver
+            // does not know the upload or does not support the request, all
+            // chunks are sent.
+            final boolean[] packagesReceived = new boolean[this.packageCount];
+            final HttpResponse<Void> response = client.send(
+                    this.createRequestBuilder("0").method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            this.detectPackagesReceived(response, packagesReceived);
+            return packagesReceived;
+        }
+
+        private void detectPackagesReceived(final HttpResponse<Void> response, final boolean[] packagesReceived) {
+            if (response.statusCode() != 200)
+                return;
+            final String packageReceivedPattern = "^\\s*(\\d+)(?:\\s*-\\s*(\\d+))?\\s*$";
+            for (final String packageReceived : response.headers().firstValue(HTTP_HEADER_PACKAGE_RECEIVED).orElse("").split(",")) {
+                if (!packageReceived.matches(packageReceivedPattern))
+                    continue;
+                final int first = Integer.valueOf(packageReceived.replaceAll(packageReceivedPattern, "$1"));
+                final String last = packageReceived.replaceAll(packageReceivedPattern, "$2");
+                for (int loop = first; loop <= (last.isEmpty() ? first : Integer.valueOf(last)); loop++)
+                    if (loop >= 1
+                            && loop <= this.packageCount)
+                        packagesReceived[loop -1] = true;
+            }
+        }
+
+        private void detectPackagesCached(final HttpClient client, final boolean[] packagesReceived)
+                throws Exception {
+
+            // The SHA-256 of the chunks not yet received is announced to the
+            // receiver, one line per chunk with number, range and SHA-256.
+            // The receiver takes the chunks found in its cache and answers
+            // like the status request. If the receiver does not support this,
+            // all chunks are sent.
+            final StringBuilder packageLines = new StringBuilder();
+            for (int number = 1; number <= this.packageCount; number++) {
+                if (packagesReceived[number -1])
+                    continue;
+                final long position = this.packageOffsets[number -1];
+                final long size = this.packageOffsets[number] -position;
+                packageLines.append(String.format("%d/%d-%d/%d/%s\n", number, position, position +size -1,
+                        this.packageFile.length(), this.packageHashes[number -1]));
+            }
+            final HttpRequest.Builder requestBuilder = this.createRequestBuilder("0");
+            if (Objects.nonNull(this.deltaCheckSum))
+                requestBuilder.header(HTTP_HEADER_PACKAGE_DELTA, this.deltaCheckSum);
+            final HttpResponse<Void> response = client.send(
+                    requestBuilder.POST(HttpRequest.BodyPublishers.ofString(packageLines.toString(), StandardCharsets.US_ASCII)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            this.detectPackagesReceived(response, packagesReceived);
+        }
+
+        private class Progress {
+
+            private final long timing;
+            private final int[] packageStates;
+            private int packageNumber;
+            private String failure;
+
+            private Progress() {
+                this.timing = System.currentTimeMillis();
+                this.packageStates = new int[packageCount];
+            }
+
+            // The responses of the chunks can arrive in any order. Completion
+            // is reported in the order of the chunks, so the output looks the
+            // same as for sequential sending.
+            private synchronized void complete(final int packageNumber, final int responseCode) {
+                this.packageStates[packageNumber -1] = responseCode;
+                while (this.packageNumber < packageCount
+                        && this.packageStates[this.packageNumber] != 0) {
+                    this.packageNumber++;
+                    if (this.packageStates[this.packageNumber -1] < 0)
+                        System.out.printf("%sPackage %d of %d skipped (already received, %d ms)%n",
+                                label, this.packageNumber, packageCount, System.currentTimeMillis() -this.timing);
+                    else System.out.printf("%sPackage %d of %d complete (status %d, %d ms)%n",
+                            label, this.packageNumber, packageCount, this.packageStates[this.packageNumber -1], System.currentTimeMillis() -this.timing);
+                }
+            }
+
+            private void skip(final int packageNumber) {
+                this.complete(packageNumber, -1);
+            }
+
+            private synchronized void fail(final String failure) {
+                if (Objects.isNull(this.failure))
+                    this.failure = failure;
+            }
+
+            private synchronized String failure() {
+                return this.failure;
+            }
+        }
+
+        private void adapt(final long size, final long duration) {
+
+            // The size of the next requests is derived from the throughput of
+            // the last request, so that a request takes about ADAPTIVE_TIMING.
+            // Per request, the size changes by a factor of two at most and
+            // always remains between the chunk size and the adaptive size.
+            // Repeated requests after errors take longer and so reduce the
+            // size.
+            final long estimate = size *ADAPTIVE_TIMING /Math.max(duration, 1);
+            this.adaptiveTarget.updateAndGet(target ->
+                    Math.max(this.packageSize, Math.min(this.adaptiveSize, Math.max(target /2, Math.min(target *2, estimate)))));
+        }
+
         private void push()
                 throws IOException {
-            final HttpClient client = this.createClient();
-            final long timing = System.currentTimeMillis();
-            try (final DataInputStream inputStream = new DataInputStream(new FileInputStream(this.file))) {
-                long packageNumber = 0;
-                long dataNumber = this.file.length();
+            // Each HTTP client has its own connections. With several clients,
+            // the chunks are distributed among them in turn.
+            final HttpClient[] clients = new HttpClient[this.connections];
+            for (int index = 0; index < clients.length; index++)
+                clients[index] = this.createClient();
+            final HttpClient client = clients[0];
+            final Progress progress = new Progress();
+            final long deadline = this.timeBudget > 0 ? progress.timing +this.timeBudget : 0;
+
+            // The number of chunks in transit at the same time is limited by
+            // the semaphore. Each chunk releases its permit when its response
+            // is complete, so that the next chunk can be sent.
+            final Semaphore window = new Semaphore(this.concurrency);
+            final boolean[] packagesReceived;
+            try {packagesReceived = this.resume ? this.detectPackagesReceived(client) : new boolean[this.packageCount];
+                if (this.cache)
+                    this.detectPackagesCached(client, packagesReceived);
+            } catch (Exception exception) {
+                throw new AbortState(String.format("%sStatus of packages rejected (%d ms)",
+                        this.label, System.currentTimeMillis() -progress.timing));
+            }
+            try (final FileChannel channel = FileChannel.open(this.packageFile.toPath(), StandardOpenOption.READ)) {
+                int packageNumber = 0;
                 try {
-                    while (dataNumber > 0) {
-                        final HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                                .uri(this.destination.toURI());
-                        if (Objects.nonNull(this.requestHeader))
-                            for (final String property : this.requestHeader) {
-                                final String propertyPattern = "^\\s*(.*?)\\s*(?::\\s*(.*?))?\\s*$";
-                                final String propertyKey = property.replaceAll(propertyPattern, "$1");
-                                final String propertyValue = property.replaceAll(propertyPattern, "$2");
-                                if (propertyKey.isBlank()
-                                        || propertyValue.isBlank())
-                                    continue;
-                                requestBuilder.header(propertyKey, propertyValue);
-                            }
-                        requestBuilder.header(HTTP_HEADER_PACKAGE,
-                                String.format("%s/%s/%s/%s/%s",
-                                        this.uuid, this.secret, ++packageNumber, this.packageCount, this.checkSum));
-                        final byte[] buffer = new byte[(int)Math.min(dataNumber, this.packageSize)];
-                        inputStream.readFully(buffer);
-                        requestBuilder.PUT(HttpRequest.BodyPublishers.ofByteArray(buffer));
-                        final HttpResponse<Void> response = client.send(
-                                requestBuilder.build(),
-                                HttpResponse.BodyHandlers.discarding());                        
-                        final int responseCode = response.statusCode();
-                        if (responseCode != 201)
-                            throw new AbortState(String.format("Package %d of %d failed (status %d, %d ms)",
-                                    packageNumber, packageCount, responseCode, System.currentTimeMillis() -timing));
-                        System.out.printf("Package %d of %d complete (status %d, %d ms)%n",
-                                packageNumber, packageCount, responseCode, System.currentTimeMillis() -timing);
-                        dataNumber -= buffer.length;
+                    while (packageNumber < this.packageCount) {
+                        window.acquire();
+                        if (deadline > 0
+                                && System.currentTimeMillis() >= deadline)
+                            progress.fail(String.format("%sTime limit of %d ms exceeded (%d ms)",
+                                    this.label, this.timeBudget, System.currentTimeMillis() -progress.timing));
+                        if (Objects.nonNull(progress.failure())) {
+                            window.release();
+                            break;
+                        }
+                        final int number = ++packageNumber;
+                        if (packagesReceived[number -1]) {
+                            progress.skip(number);
+                            window.release();
+                            continue;
+                        }
+
+                        // With the adaptive size, the following chunks not yet
+                        // received are added as long as the request does not
+                        // exceed the current size.
+                        final long position = this.packageOffsets[number -1];
+                        if (this.adaptiveSize > 0)
+                            while (packageNumber < this.packageCount
+                                    && !packagesReceived[packageNumber]
+                                    && this.packageOffsets[packageNumber +1] -position <= this.adaptiveTarget.get())
+                                packageNumber++;
+                        final int last = packageNumber;
+                        final long size = this.packageOffsets[last] -position;
+                        final long timing = System.currentTimeMillis();
+                        final PackageSentEvent event = new PackageSentEvent();
+                        event.begin();
+                        this.send(clients[(number -1) %clients.length],
+                                this.createRequest(number, last, channel, position, size, deadline), number, last, deadline, 0)
+                                .whenComplete((response, throwable) -> {
+                                    if (event.shouldCommit()) {
+                                        event.destination = this.destination.toString();
+                                        event.uuid = this.uuid;
+                                        event.number = number;
+                                        event.last = last;
+                                        event.count = packageCount;
+                                        event.size = size;
+                                        event.compressed = this.compress;
+                                        event.status = Objects.nonNull(response) ? response.statusCode() : 0;
+                                        event.commit();
+                                    }
+                                    if (Objects.nonNull(throwable))
+                                        progress.fail(String.format("%sPackage %d of %d rejected (%d ms)",
+                                                this.label, number, packageCount, System.currentTimeMillis() -progress.timing));
+                                    else if (response.statusCode() == SC_PACKAGE_LOCKED)
+                                        for (int loop = number; loop <= last; loop++)
+                                            progress.skip(loop);
+                                    else if (response.statusCode() != 201)
+                                        progress.fail(String.format("%sPackage %d of %d failed (status %d, %d ms)",
+                                                this.label, number, packageCount, response.statusCode(), System.currentTimeMillis() -progress.timing));
+                                    else {
+                                        if (this.adaptiveSize > 0)
+                                            this.adapt(size, System.currentTimeMillis() -timing);
+                                        for (int loop = number; loop <= last; loop++)
+                                            progress.complete(loop, response.statusCode());
+                                    }
+                                    window.release();
+                                });
                     }
+                    window.acquire(this.concurrency);
                 } catch (Exception exception) {
-                    if (exception instanceof AbstractState)
-                        throw (AbstractState)exception;
-                    throw new AbortState(String.format("Package %d of %d rejected (%d ms)",
-                            packageNumber, packageCount, System.currentTimeMillis() -timing));
+                    throw new AbortState(String.format("%sPackage %d of %d rejected (%d ms)",
+                            this.label, packageNumber, packageCount, System.currentTimeMillis() -progress.timing));
                 }
+            } finally {
+                if (Objects.nonNull(this.deltaFile))
+                    this.deltaFile.delete();
+                if (Objects.nonNull(this.executor))
+                    this.executor.shutdown();
             }
+            if (Objects.nonNull(progress.failure()))
+                throw new AbortState(progress.failure());
+            if (this.resume)
+                this.resumeFile.delete();
         }
     }
 
@@ -314,10 +1521,24 @@ public class RemoteDeploymentPush {
             else if (Objects.nonNull(cause))
                 System.out.printf("%n%s: %s%n%n", cause.getClass().getSimpleName(), cause.getMessage());
 
-            System.out.printf("usage: %s <url> <secret> <file> [options...]%n", RemoteDeploymentPush.class.getName());
+            System.out.printf("usage: %s <url>[,<url>...] <secret> <file> [options...]%n", RemoteDeploymentPush.class.getName());
             System.out.println(" -p Proxy as URL, default port 3128");
             System.out.println(" -h Additional HTTP request headers as <header>:<value>");
             System.out.println(" -s Chunk size in bytes, default 4194304 bytes");
+            System.out.println(" -b Content-defined chunk boundaries, chunk size as average");
+            System.out.println(" -a Adaptive chunk size up to the given bytes, chunk size as minimum");
+            System.out.println(" -c Number of chunks sent concurrently, default 1");
+            System.out.println(" -r Resume an interrupted upload of the same file");
+            System.out.println(" -t Number of retries per chunk, default 2");
+            System.out.println(" -m Maximum time for the upload in milliseconds");
+            System.out.println(" -u HTTP version h2, h2c or 1.1, default h2 with fallback to 1.1");
+            System.out.println(" -n Number of HTTP connections (clients), default 1");
+            System.out.println(" -e Number of threads of the HTTP client executor");
+            System.out.println(" -o Timeout in milliseconds for connecting and for each request");
+            System.out.println(" -l Maximum bytes per second for sending, for all destinations");
+            System.out.println(" -z Compressed sending of the chunks (deflate)");
+            System.out.println(" -x Sending only a delta to the deployed file");
+            System.out.println(" -k Sending only chunks that are not in the cache of the receiver");
             System.out.println(" -v Verbose exceptions with stacktrace");
             System.out.println(" -d Verbose HTTP client output (debug mode)");
         }
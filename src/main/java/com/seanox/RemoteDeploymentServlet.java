@@ -90,16 +90,61 @@ import jakarta.servlet.http.HttpServletResponse;
  * the data is transferred in chunks, the files must be retained. The
  * expiration time in milliseconds determines how long the expiration time is
  * in case of an error. After the expiration time, the temporary files are
- * cleaned up. A value 0 and smaller disables the clean up.
+ * cleaned up. A value 0 and smaller disables the clean up. The clean up
+ * runs in the background, the requests do not check the temporary files.
+ *
+ * <h3>Parameter: staging</h3>
+ * Directory for the temporary files, default the directory of the destination
+ * file, so that the activation is an atomic move and not a copy. Each
+ * instance uses its own subdirectory of a hidden directory there.
+ *
+ * <h3>Parameter: workers</h3>
+ * The completion of an upload (merge, checksum, activation and command) is
+ * done in the background by a separate executor, so that the threads of the
+ * servlet container are released immediately. The number of threads of the
+ * executor is determined by this parameter, default 1.
+ *
+ * <h3>Parameter: virtual</h3>
+ * With the value true, the executor uses virtual threads, if they are
+ * available (Java 21 and higher). Otherwise, platform threads are used.
+ *
+ * <h3>Parameter: async</h3>
+ * With the value true, the chunks are received with non-blocking I/O, so that
+ * slow uploads do not occupy threads of the servlet container. This requires
+ * the registration of the servlet with async-supported, otherwise blocking I/O
+ * is used.
+ *
+ * <h3>Parameter: cache</h3>
+ * Maximum size in bytes of the cache for received chunks, default 0 (no
+ * cache). Chunks contained in the cache need not be sent again, e.g. for a
+ * rollback or a repeated deployment. The chunks used least recently are
+ * removed first.
+ *
+ * <h3>Parameter: relay</h3>
+ * Optional comma-separated list of URLs of other nodes with the same secret,
+ * to which each received chunk is forwarded. So the sender uploads only to one
+ * node of a cluster. Each node checks the checksum and executes its own
+ * command.
+ *
+ * <h3>Parameter: limit</h3>
+ * Maximum number of bytes per second that are received for all uploads
+ * together, default 0 (no limit), e.g. to deploy during operation.
  *
  * <h3>Parameter: url-pattern</h3>
  * Servlets and the update are called via a virtual path that is not publicly
  * known. The path is a cryptic alias that refers to a concrete path in the
  * file system in the further configuration.
  *
+ * <h3>Metrics</h3>
+ * Each instance registers an MBean with metrics of the received chunks and the
+ * uploads as com.seanox:type=RemoteDeployment (see RemoteDeploymentMXBean).
+ * The phases of an upload are also recorded as events of the Java Flight
+ * Recorder (category Seanox / Remote Deployment).
+ *
  * <h3>Security Concept</h3>
- * Only PUT requests and matching Secret headers are accepted, otherwise the
- * servlet behaves as if it does not exist. The servlet reacts only after
+ * Only PUT requests (HEAD, GET and POST for the status, the signatures and
+ * the cache of an upload) and matching Secret headers are accepted, otherwise
+ * the servlet behaves as if it does not exist. The servlet reacts only after
  * sufficient authorization.
  *
  * <h3>Configuration Tomcat (server.xml)</b></dir>
@@ -137,9 +182,10 @@ public class RemoteDeploymentServlet extends HttpServlet {
     protected void service(final HttpServletRequest request, final HttpServletResponse response)
             throws IOException, ServletException {
 
-        // Only PUT requests and matching Secret headers are accepted,
-        // otherwise the Servlet behaves as if it does not exist. This is the
-        // security concept. The Servlet reacts only after authorization.
+        // Only PUT, HEAD, GET and POST requests and matching Secret headers
+        // are accepted, otherwise the Servlet behaves as if it does not exist.
+        // This is the security concept. The Servlet reacts only after
+        // authorization.
         try {this.remoteDeployment.service(request, response);
         } catch (RemoteDeploymentImpl.UnsupportedRequestException exception) {
             try {request.getInputStream().transferTo(OutputStream.nullOutputStream());
@@ -55,6 +55,7 @@ class Application extends SpringBootServletInitializer {
             put("destination", "output_filter_1.png");
             put("command", "cmd /C ping -n 3 127.0.0.1 > NUL && dir /B > output_filter_2.txt && ping -n 3 127.0.0.1 > NUL && dir /B > output_filter_3.txt");
             put("expiration", "300000");
+            put("cache", "67108864");
         }});
         registration.addUrlPatterns("/0123456789ABCDEF");
         return registration;
@@ -69,8 +70,38 @@ class Application extends SpringBootServletInitializer {
             put("destination", "output_servlet_1.png");
             put("command", "cmd /C ping -n 3 127.0.0.1 > NUL && dir /B > output_servlet_2.txt && ping -n 3 127.0.0.1 > NUL && dir /B > output_servlet_3.txt");
             put("expiration", "300000");
+            put("async", "on");
+            put("cache", "67108864");
+            put("relay", "http://127.0.0.1:8080/FEDCBA9876543210-relay");
         }});
+        registration.setAsyncSupported(true);
         registration.addUrlMappings("/FEDCBA9876543210");
         return registration;
     }
+
+    @Bean
+    ServletRegistrationBean remoteDeploymentRelayRegistration() {
+        final ServletRegistrationBean registration = new ServletRegistrationBean();
+        registration.setServlet(new RemoteDeploymentServlet());
+        registration.setInitParameters(new HashMap<>() {{
+            put("secret", "8H7G6F5E4D3C2B1A");
+            put("destination", "output_relay_1.png");
+            put("expiration", "300000");
+        }});
+        registration.addUrlMappings("/FEDCBA9876543210-relay");
+        return registration;
+    }
+
+    @Bean
+    ServletRegistrationBean remoteDeploymentExpireRegistration() {
+        final ServletRegistrationBean registration = new ServletRegistrationBean();
+        registration.setServlet(new RemoteDeploymentServlet());
+        registration.setInitParameters(new HashMap<>() {{
+            put("secret", "8H7G6F5E4D3C2B1A");
+            put("destination", "output_expire_1.png");
+            put("expiration", "2000");
+        }});
+        registration.addUrlMappings("/FEDCBA9876543210-expire");
+        return registration;
+    }
 }
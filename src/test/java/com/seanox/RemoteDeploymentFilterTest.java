@@ -136,4 +136,227 @@ public class RemoteDeploymentFilterTest {
         if (!outputText.matches("(?s)^.*Package 1 of 6 (failed|rejected).*$"))
             Assertions.fail("Wrong output: " + outputText);
     }
+
+    @Test
+    void test_5()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-c", "3",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        for (int index = 1; index <= 6; index++) {
+            final String completePattern = String.format("Package %d of 6 complete (status 201,", index);
+            if (!outputText.contains(completePattern))
+                Assertions.fail("Missing output: " + completePattern);
+        }
+        if (!outputText.matches("(?s)^.*Package 1 of 6 complete.*Package 2 of 6 complete.*Package 3 of 6 complete.*$"))
+            Assertions.fail("Wrong order of output: " + outputText);
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_6()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-z",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Compress:    deflate"))
+            Assertions.fail("Missing output: Compress");
+        for (int index = 1; index <= 6; index++) {
+            final String completePattern = String.format("Package %d of 6 complete (status 201,", index);
+            if (!outputText.contains(completePattern))
+                Assertions.fail("Missing output: " + completePattern);
+        }
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_7()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-x",
+                "-v");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        outputBuffer.reset();
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-x",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.matches("(?s)^.*Delta:\\s+\\d{1,4} bytes.*$"))
+            Assertions.fail("Wrong output: " + outputText);
+        if (!outputText.contains("Package 1 of 1 complete (status 201,"))
+            Assertions.fail("Missing output: Package 1 of 1 complete");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_8()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-k",
+                "-v");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        OUTPUT_1.delete();
+        outputBuffer.reset();
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-k",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        for (int index = 1; index <= 6; index++) {
+            final String skipPattern = String.format("Package %d of 6 skipped (already received,", index);
+            if (!outputText.contains(skipPattern))
+                Assertions.fail("Missing output: " + skipPattern);
+        }
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_9()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-b",
+                "-k",
+                "-v");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        OUTPUT_1.delete();
+        outputBuffer.reset();
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-b",
+                "-k",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("(content-defined)"))
+            Assertions.fail("Missing output: (content-defined)");
+        if (!outputText.contains("skipped (already received,"))
+            Assertions.fail("Missing output: skipped (already received,");
+        if (outputText.contains("complete (status 201,"))
+            Assertions.fail("Unexpected output: complete (status 201,");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_10()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF,http://127.0.0.1:8080/0123456789ABCDEF?node=2",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        for (int index = 1; index <= 2; index++) {
+            final String targetPattern = String.format("[%d] Package 6 of 6 complete (status 201,", index);
+            if (!outputText.contains(targetPattern))
+                Assertions.fail("Missing output: " + targetPattern);
+        }
+        if (!outputText.matches("(?s)^.*\\[1\\] \\S+ complete.*\\[2\\] \\S+ complete.*$"))
+            Assertions.fail("Missing output: Summary of the destinations");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_11()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/0123456789ABCDEF",
+                "A1B2C3D4E5F6G7H8",
+                "./src/test/resources/example.png",
+                "-s",
+                "1048576",
+                "-a",
+                "8388608",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Adaptive:    up to 8388608 bytes per request"))
+            Assertions.fail("Missing output: Adaptive");
+        for (int index = 1; index <= 21; index++) {
+            final String completePattern = String.format("Package %d of 21 complete (status 201,", index);
+            if (!outputText.contains(completePattern))
+                Assertions.fail("Missing output: " + completePattern);
+        }
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
 }
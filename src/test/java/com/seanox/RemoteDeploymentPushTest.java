@@ -135,4 +135,25 @@ public class RemoteDeploymentPushTest {
         if (!outputText.contains("Invalid path of data file"))
             Assertions.fail("Missing: Invalid path of data file");
     }
+
+    @Test
+    void test_6() {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        final long timing = System.currentTimeMillis();
+        Throwable throwable = Assertions.assertThrows(Exception.class, () ->
+            RemoteDeploymentPush.main("http://127.0.0.1:1/xxx", "xxx", "./src/test/resources/example.png", "-t", "10", "-m", "3000")
+        );
+        OUTPUT.println(outputBuffer);
+        Assertions.assertEquals("AbortState", throwable.getClass().getSimpleName());
+        if (System.currentTimeMillis() -timing > 30000)
+            Assertions.fail("Time limit exceeded");
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Retries:     10 per package"))
+            Assertions.fail("Missing output: Retries");
+        if (!outputText.contains("Time limit:  3000 ms"))
+            Assertions.fail("Missing output: Time limit");
+        if (!outputText.matches("(?s)^.*Package 1 of 6 rejected.*$"))
+            Assertions.fail("Missing output: Package 1 of 6 rejected");
+    }
 }
@@ -23,9 +23,27 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
 
 public class RemoteDeploymentServletTest {
 
@@ -39,6 +57,10 @@ public class RemoteDeploymentServletTest {
     private static final File OUTPUT_1 = new File("./output_servlet_1.png");
     private static final File OUTPUT_2 = new File("./output_servlet_2.txt");
     private static final File OUTPUT_3 = new File("./output_servlet_3.txt");
+    private static final File OUTPUT_RELAY = new File("./output_relay_1.png");
+
+    private static final File EXAMPLE = new File("./src/test/resources/example.png");
+    private static final int PACKAGE_SIZE = 4 *1024 *1024;
 
     @BeforeEach
     @AfterEach
@@ -54,6 +76,9 @@ public class RemoteDeploymentServletTest {
         OUTPUT_3.delete();
         if (OUTPUT_3.exists())
             Assertions.fail(OUTPUT_3 + " was not deleted");
+        OUTPUT_RELAY.delete();
+        if (OUTPUT_RELAY.exists())
+            Assertions.fail(OUTPUT_RELAY + " was not deleted");
     }
 
     @Test
@@ -136,4 +161,583 @@ public class RemoteDeploymentServletTest {
         if (!outputText.matches("(?s)^.*Package 1 of 6 (failed|rejected).*$"))
             Assertions.fail("Wrong output: " + outputText);
     }
+
+    @Test
+    void test_5()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-c", "3",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        for (int index = 1; index <= 6; index++) {
+            final String completePattern = String.format("Package %d of 6 complete (status 201,", index);
+            if (!outputText.contains(completePattern))
+                Assertions.fail("Missing output: " + completePattern);
+        }
+        if (!outputText.matches("(?s)^.*Package 1 of 6 complete.*Package 2 of 6 complete.*Package 3 of 6 complete.*$"))
+            Assertions.fail("Wrong order of output: " + outputText);
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_6()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-z",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Compress:    deflate"))
+            Assertions.fail("Missing output: Compress");
+        for (int index = 1; index <= 6; index++) {
+            final String completePattern = String.format("Package %d of 6 complete (status 201,", index);
+            if (!outputText.contains(completePattern))
+                Assertions.fail("Missing output: " + completePattern);
+        }
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_7()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-x",
+                "-v");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        outputBuffer.reset();
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-x",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.matches("(?s)^.*Delta:\\s+\\d{1,4} bytes.*$"))
+            Assertions.fail("Wrong output: " + outputText);
+        if (!outputText.contains("Package 1 of 1 complete (status 201,"))
+            Assertions.fail("Missing output: Package 1 of 1 complete");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_8()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-k",
+                "-v");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        OUTPUT_1.delete();
+        outputBuffer.reset();
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-k",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        for (int index = 1; index <= 6; index++) {
+            final String skipPattern = String.format("Package %d of 6 skipped (already received,", index);
+            if (!outputText.contains(skipPattern))
+                Assertions.fail("Missing output: " + skipPattern);
+        }
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_9()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-b",
+                "-k",
+                "-v");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        OUTPUT_1.delete();
+        outputBuffer.reset();
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-b",
+                "-k",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("(content-defined)"))
+            Assertions.fail("Missing output: (content-defined)");
+        if (!outputText.contains("skipped (already received,"))
+            Assertions.fail("Missing output: skipped (already received,");
+        if (outputText.contains("complete (status 201,"))
+            Assertions.fail("Unexpected output: complete (status 201,");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_10()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210,http://127.0.0.1:8080/FEDCBA9876543210?node=2",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        for (int index = 1; index <= 2; index++) {
+            final String targetPattern = String.format("[%d] Package 6 of 6 complete (status 201,", index);
+            if (!outputText.contains(targetPattern))
+                Assertions.fail("Missing output: " + targetPattern);
+        }
+        if (!outputText.matches("(?s)^.*\\[1\\] \\S+ complete.*\\[2\\] \\S+ complete.*$"))
+            Assertions.fail("Missing output: Summary of the destinations");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_11()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-c",
+                "3",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Package 6 of 6 complete (status 201,"))
+            Assertions.fail("Missing output: Package 6 of 6 complete");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_RELAY.exists())
+            Assertions.fail("Missing: " + OUTPUT_RELAY);
+        if (OUTPUT_RELAY.length() != OUTPUT_1.length())
+            Assertions.fail("Invalid: " + OUTPUT_RELAY);
+    }
+
+    @Test
+    void test_12()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-s",
+                "1048576",
+                "-a",
+                "8388608",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Adaptive:    up to 8388608 bytes per request"))
+            Assertions.fail("Missing output: Adaptive");
+        for (int index = 1; index <= 21; index++) {
+            final String completePattern = String.format("Package %d of 21 complete (status 201,", index);
+            if (!outputText.contains(completePattern))
+                Assertions.fail("Missing output: " + completePattern);
+        }
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    @Test
+    void test_13()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        final long timing = System.currentTimeMillis();
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-s",
+                "1048576",
+                "-c",
+                "4",
+                "-l",
+                "8388608",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Limit:       8388608 bytes/s"))
+            Assertions.fail("Missing output: Limit");
+        for (int index = 1; index <= 21; index++) {
+            final String completePattern = String.format("Package %d of 21 complete (status 201,", index);
+            if (!outputText.contains(completePattern))
+                Assertions.fail("Missing output: " + completePattern);
+        }
+        if (System.currentTimeMillis() -timing < 1000)
+            Assertions.fail("Limit not applied");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        if (!OUTPUT_2.exists())
+            Assertions.fail("Missing: " + OUTPUT_2);
+        if (!OUTPUT_3.exists())
+            Assertions.fail("Missing: " + OUTPUT_3);
+    }
+
+    private static String calcCheckSum(final byte[] data, final int offset, final int length)
+            throws Exception {
+        final MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+        messageDigest.update(data, offset, length);
+        final StringBuilder checkSum = new StringBuilder();
+        for (final byte digit : messageDigest.digest())
+            checkSum.append(String.format("%02X", digit));
+        return checkSum.toString();
+    }
+
+    private static HttpRequest.Builder createRequestBuilder(final String uuid, final byte[] data, final int number)
+            throws Exception {
+        return RemoteDeploymentServletTest.createRequestBuilder("/FEDCBA9876543210", uuid, data, number);
+    }
+
+    private static HttpRequest.Builder createRequestBuilder(final String path, final String uuid, final byte[] data,
+            final int number)
+            throws Exception {
+        final int count = (data.length +PACKAGE_SIZE -1) /PACKAGE_SIZE;
+        return HttpRequest.newBuilder(URI.create("http://127.0.0.1:8080" + path))
+                .header("Package", String.format("%s/8H7G6F5E4D3C2B1A/%d/%d/%s",
+                        uuid, number, count, RemoteDeploymentServletTest.calcCheckSum(data, 0, data.length)));
+    }
+
+    private static HttpRequest createPackageRequest(final String uuid, final byte[] data, final int number,
+            final String packageCheckSum)
+            throws Exception {
+        return RemoteDeploymentServletTest.createPackageRequest("/FEDCBA9876543210", uuid, data, number, packageCheckSum);
+    }
+
+    private static HttpRequest createPackageRequest(final String path, final String uuid, final byte[] data,
+            final int number, final String packageCheckSum)
+            throws Exception {
+        final int offset = (number -1) *PACKAGE_SIZE;
+        final int length = Math.min(PACKAGE_SIZE, data.length -offset);
+        return RemoteDeploymentServletTest.createRequestBuilder(path, uuid, data, number)
+                .header("Package-Range", String.format("%d-%d/%d", offset, offset +length -1, data.length))
+                .header("Package-Checksum", Objects.nonNull(packageCheckSum) ? packageCheckSum : RemoteDeploymentServletTest.calcCheckSum(data, offset, length))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(Arrays.copyOfRange(data, offset, offset +length)))
+                .build();
+    }
+
+    private static int sendPackage(final String uuid, final byte[] data, final int number, final String packageCheckSum)
+            throws Exception {
+        return HttpClient.newHttpClient().send(RemoteDeploymentServletTest.createPackageRequest(uuid, data, number, packageCheckSum),
+                HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Test
+    void test_14() {
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(90), () -> {
+            final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+            System.setOut(new PrintStream(outputBuffer));
+            RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                    "8H7G6F5E4D3C2B1A",
+                    "./src/test/resources/example.png",
+                    "-s", "262144",
+                    "-c", "16",
+                    "-v");
+            OUTPUT.println(outputBuffer);
+            final String outputText = outputBuffer.toString();
+            for (int index = 1; index <= 81; index++) {
+                final String completePattern = String.format("Package %d of 81 complete (status 201,", index);
+                if (!outputText.contains(completePattern))
+                    Assertions.fail("Missing output: " + completePattern);
+            }
+            Thread.sleep(5000);
+            if (!OUTPUT_1.exists())
+                Assertions.fail("Missing: " + OUTPUT_1);
+            Assertions.assertArrayEquals(Files.readAllBytes(EXAMPLE.toPath()), Files.readAllBytes(OUTPUT_1.toPath()));
+            if (!OUTPUT_RELAY.exists())
+                Assertions.fail("Missing: " + OUTPUT_RELAY);
+            if (OUTPUT_RELAY.length() != OUTPUT_1.length())
+                Assertions.fail("Invalid: " + OUTPUT_RELAY);
+        });
+    }
+
+    @Test
+    void test_15()
+            throws Exception {
+        final byte[] data = Files.readAllBytes(EXAMPLE.toPath());
+        final String uuid = UUID.randomUUID().toString().toUpperCase();
+        Assertions.assertEquals(422, RemoteDeploymentServletTest.sendPackage(uuid, data, 2, "00112233445566778899AABBCCDDEEFF"));
+        for (int number = 1; number <= 6; number++)
+            Assertions.assertEquals(201, RemoteDeploymentServletTest.sendPackage(uuid, data, number, null));
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        Assertions.assertArrayEquals(data, Files.readAllBytes(OUTPUT_1.toPath()));
+    }
+
+    @Test
+    void test_16()
+            throws Exception {
+        final byte[] data = Files.readAllBytes(EXAMPLE.toPath());
+        final String uuid = UUID.randomUUID().toString().toUpperCase();
+        final HttpClient client = HttpClient.newHttpClient();
+        Assertions.assertEquals("", client.send(RemoteDeploymentServletTest.createRequestBuilder(uuid, data, 1)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding()).headers().firstValue("Package-Received").orElse(null));
+        for (final int number : new int[] {1, 2, 4})
+            Assertions.assertEquals(201, RemoteDeploymentServletTest.sendPackage(uuid, data, number, null));
+        final HttpResponse<Void> response = client.send(RemoteDeploymentServletTest.createRequestBuilder(uuid, data, 1)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding());
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("1-2,4", response.headers().firstValue("Package-Received").orElse(null));
+        Assertions.assertEquals(423, RemoteDeploymentServletTest.sendPackage(uuid, data, 2, null));
+
+        // The missing chunks are sent concurrently, the upload is completed
+        // by the chunk that arrives last, whichever it is.
+        final CompletableFuture<?>[] futures = Arrays.stream(new int[] {3, 5, 6})
+                .mapToObj(number -> {
+                    try {return client.sendAsync(RemoteDeploymentServletTest.createPackageRequest(uuid, data, number, null),
+                            HttpResponse.BodyHandlers.discarding());
+                    } catch (Exception exception) {
+                        return CompletableFuture.failedFuture(exception);
+                    }})
+                .toArray(CompletableFuture[]::new);
+        for (final CompletableFuture<?> future : futures)
+            Assertions.assertEquals(201, ((HttpResponse<?>)future.get()).statusCode());
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        Assertions.assertArrayEquals(data, Files.readAllBytes(OUTPUT_1.toPath()));
+    }
+
+    @Test
+    void test_17()
+            throws Exception {
+        final byte[] data = Files.readAllBytes(EXAMPLE.toPath());
+        final String uuid = UUID.randomUUID().toString().toUpperCase();
+        final HttpClient client = HttpClient.newHttpClient();
+
+        // The body of the first request is held back, so the chunk is being
+        // received when it is sent again.
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CompletableFuture<HttpResponse<Void>> future = client.sendAsync(RemoteDeploymentServletTest.createRequestBuilder(uuid, data, 1)
+                .header("Package-Range", String.format("0-%d/%d", PACKAGE_SIZE -1, data.length))
+                .header("Package-Checksum", RemoteDeploymentServletTest.calcCheckSum(data, 0, PACKAGE_SIZE))
+                .PUT(HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> new InputStream() {
+                    private final InputStream inputStream = new ByteArrayInputStream(data, 0, PACKAGE_SIZE);
+                    @Override
+                    public int read()
+                            throws IOException {
+                        final byte[] bytes = new byte[1];
+                        return this.read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xFF;
+                    }
+                    @Override
+                    public int read(final byte[] bytes, final int offset, final int length)
+                            throws IOException {
+                        if (this.inputStream.available() < PACKAGE_SIZE -0xFFFF)
+                            try {latch.await();
+                            } catch (InterruptedException exception) {
+                                throw new InterruptedIOException();
+                            }
+                        return this.inputStream.read(bytes, offset, Math.min(length, 0xFFFF));
+                    }
+                }), PACKAGE_SIZE))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        Thread.sleep(1000);
+        final HttpResponse<Void> response = client.send(RemoteDeploymentServletTest.createPackageRequest(uuid, data, 1, null),
+                HttpResponse.BodyHandlers.discarding());
+        Assertions.assertEquals(409, response.statusCode());
+        Assertions.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+        latch.countDown();
+        Assertions.assertEquals(201, future.get().statusCode());
+        Assertions.assertEquals(423, RemoteDeploymentServletTest.sendPackage(uuid, data, 1, null));
+    }
+
+    @Test
+    void test_18()
+            throws Exception {
+        final ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(outputBuffer));
+        RemoteDeploymentPush.main("http://127.0.0.1:8080/FEDCBA9876543210",
+                "8H7G6F5E4D3C2B1A",
+                "./src/test/resources/example.png",
+                "-c", "3",
+                "-v");
+        OUTPUT.println(outputBuffer);
+        final String outputText = outputBuffer.toString();
+        if (!outputText.contains("Package 6 of 6 complete (status 201,"))
+            Assertions.fail("Missing output: Package 6 of 6 complete");
+        final String uuid = outputText.replaceAll("(?s)^.*UUID:\\s+([\\w-]+).*$", "$1");
+        if (!uuid.matches("^[0-9A-F-]{36}$"))
+            Assertions.fail("Missing output: UUID");
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        Assertions.assertArrayEquals(Files.readAllBytes(EXAMPLE.toPath()), Files.readAllBytes(OUTPUT_1.toPath()));
+
+        // The temporary files are created in a staging directory next to the
+        // destination file and are moved or deleted with the activation.
+        Assertions.assertEquals(0, RemoteDeploymentServletTest.countFiles(new File("."), uuid));
+    }
+
+    private static long countFiles(final File directory, final String uuid)
+            throws IOException {
+        try (final Stream<Path> stream = Files.walk(directory.toPath())) {
+            return stream.filter(path -> path.getFileName().toString().startsWith(uuid)).count();
+        }
+    }
+
+    @Test
+    void test_19()
+            throws Exception {
+        final byte[] data = Files.readAllBytes(EXAMPLE.toPath());
+        final String uuid = UUID.randomUUID().toString().toUpperCase();
+        final HttpClient client = HttpClient.newHttpClient();
+        for (final int number : new int[] {1, 2})
+            Assertions.assertEquals(201, client.send(RemoteDeploymentServletTest.createPackageRequest("/FEDCBA9876543210-expire",
+                    uuid, data, number, null), HttpResponse.BodyHandlers.discarding()).statusCode());
+        final File[] directories = new File(".").listFiles((directory, name) ->
+                name.matches("^\\.output_expire_1\\.png-[0-9A-F]{8}\\.staging$"));
+        Assertions.assertEquals(1, Objects.requireNonNull(directories).length);
+        final File staging = directories[0];
+        if (RemoteDeploymentServletTest.countFiles(staging, uuid) == 0)
+            Assertions.fail("Missing: " + uuid + ".temp");
+        final HttpRequest request = RemoteDeploymentServletTest.createRequestBuilder("/FEDCBA9876543210-expire", uuid, data, 1)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+        Assertions.assertEquals("1-2", client.send(request,
+                HttpResponse.BodyHandlers.discarding()).headers().firstValue("Package-Received").orElse(null));
+
+        // The incomplete upload expires after 2 seconds, the janitor runs
+        // every second and deletes the files of the upload by their names.
+        // A chunk sent again then starts a new upload.
+        Thread.sleep(5000);
+        Assertions.assertEquals(0, RemoteDeploymentServletTest.countFiles(staging, uuid));
+        Assertions.assertEquals("", client.send(request,
+                HttpResponse.BodyHandlers.discarding()).headers().firstValue("Package-Received").orElse(null));
+        Assertions.assertEquals(201, client.send(RemoteDeploymentServletTest.createPackageRequest("/FEDCBA9876543210-expire",
+                uuid, data, 2, null), HttpResponse.BodyHandlers.discarding()).statusCode());
+    }
+
+    @Test
+    void test_20()
+            throws Exception {
+        final byte[] data = Files.readAllBytes(EXAMPLE.toPath());
+        final String uuid = UUID.randomUUID().toString().toUpperCase();
+        for (final int number : new int[] {1, 2})
+            Assertions.assertEquals(201, RemoteDeploymentServletTest.sendPackage(uuid, data, number, null));
+
+        // While the upload is in progress, the directory of the destination
+        // file contains no temporary files, only the hidden directory with a
+        // subdirectory per instance.
+        final File[] files = new File(".").listFiles((directory, name) ->
+                name.startsWith(uuid) || name.endsWith(".temp") || name.endsWith(".work"));
+        Assertions.assertEquals(0, Objects.requireNonNull(files).length);
+        final File[] directories = new File(".").listFiles((directory, name) ->
+                name.matches("^\\.output_servlet_1\\.png-[0-9A-F]{8}\\.staging$"));
+        Assertions.assertEquals(1, Objects.requireNonNull(directories).length);
+        for (final File file : Objects.requireNonNull(directories[0].listFiles()))
+            if (!file.getName().matches("^[0-9A-F-]{36}(\\.lock)?$"))
+                Assertions.fail("Invalid: " + file);
+        if (RemoteDeploymentServletTest.countFiles(directories[0], uuid) == 0)
+            Assertions.fail("Missing: " + uuid + ".temp");
+
+        for (final int number : new int[] {3, 4, 5, 6})
+            Assertions.assertEquals(201, RemoteDeploymentServletTest.sendPackage(uuid, data, number, null));
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        Assertions.assertArrayEquals(data, Files.readAllBytes(OUTPUT_1.toPath()));
+        Assertions.assertEquals(0, RemoteDeploymentServletTest.countFiles(directories[0], uuid));
+    }
+
+    @Test
+    void test_21()
+            throws Exception {
+        final byte[] data = Files.readAllBytes(EXAMPLE.toPath());
+        final String uuid = UUID.randomUUID().toString().toUpperCase();
+        final HttpClient client = HttpClient.newHttpClient();
+        Assertions.assertEquals(201, RemoteDeploymentServletTest.sendPackage(uuid, data, 1, null));
+
+        // A chunk with a different total size of the upload is rejected and
+        // does not change the file with the chunks already received.
+        final int offset = PACKAGE_SIZE;
+        final HttpRequest request = RemoteDeploymentServletTest.createRequestBuilder(uuid, data, 2)
+                .header("Package-Range", String.format("%d-%d/%d", offset, offset +PACKAGE_SIZE -1, data.length -1))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(Arrays.copyOfRange(data, offset, offset +PACKAGE_SIZE)))
+                .build();
+        Assertions.assertEquals(400, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+        final HttpResponse<Void> response = client.send(RemoteDeploymentServletTest.createRequestBuilder(uuid, data, 1)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.discarding());
+        Assertions.assertEquals("1", response.headers().firstValue("Package-Received").orElse(null));
+
+        for (int number = 2; number <= 6; number++)
+            Assertions.assertEquals(201, RemoteDeploymentServletTest.sendPackage(uuid, data, number, null));
+        Thread.sleep(5000);
+        if (!OUTPUT_1.exists())
+            Assertions.fail("Missing: " + OUTPUT_1);
+        Assertions.assertArrayEquals(data, Files.readAllBytes(OUTPUT_1.toPath()));
+    }
 }